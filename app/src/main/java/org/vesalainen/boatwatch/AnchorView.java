@@ -0,0 +1,1434 @@
+/*
+ * Copyright (C) 2014 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ejml.data.DenseMatrix64F;
+import org.vesalainen.boatwatch.engine.Metrics;
+import org.vesalainen.boatwatch.engine.OccupancyGrid;
+import org.vesalainen.boatwatch.engine.ScreenLines;
+import org.vesalainen.boatwatch.engine.TrackStore;
+import static org.vesalainen.boatwatch.BoatWatchConstants.LogTitle;
+import org.vesalainen.math.Circle;
+import org.vesalainen.math.ConvexPolygon;
+import org.vesalainen.navi.AnchorWatch;
+import org.vesalainen.navi.AnchorWatch.Watcher;
+import org.vesalainen.navi.SafeSector;
+import org.vesalainen.navi.SafeSector.Cursor;
+import org.vesalainen.ui.AbstractView;
+import org.vesalainen.util.navi.Angle;
+import org.vesalainen.util.navi.Feet;
+
+/**
+ * Watcher methods are called from service engine thread. They store state
+ * to Pending under a short lock and request a frame. At the start of a
+ * frame main thread copies pending state under the same lock and draws
+ * outside it, so that callbacks never wait for drawing. Track, grid and
+ * drawer are used only in main thread.
+ *
+ * <p>Safe sector is owned by engine thread. It is drawn from a copy, and
+ * touch edits of it are queued to EditQueue, which is drained in engine
+ * executor. Engine thread keeps the cursors and copies sector after each
+ * edit.
+ *
+ * <p>Frame requests are coalesced so that at most one invalidate is posted
+ * per animation frame. When view hasn't been touched in a while, frame
+ * rate is limited to unattendedFrameRate.
+ *
+ * <p>Area, estimated circle and safe sector are drawn to a cached layer
+ * bitmap which is redrawn only when those shapes or the screen transform
+ * change. Otherwise a frame is the layer and the boat location.
+ *
+ * <p>Dwell time of boat locations is collected to OccupancyGrid centered
+ * on estimated anchor. Grid is kept in a bitmap with one pixel per cell,
+ * where only cells whose dwell level has changed are updated. The bitmap
+ * is scaled to screen under the layer.
+ *
+ * <p>View can be zoomed by pinching and panned by dragging when zoomed.
+ * Zooming out to the fitted scale resets panning. Track is drawn through
+ * LineSimplifier, which culls segments outside screen and segments that
+ * are already covered within pixel tolerance.
+ *
+ * @author Timo Vesalainen
+ */
+public class AnchorView extends View implements Watcher
+{
+    private final Paint pointPaint;
+    private final Paint areaPaint;
+    private final Paint usedAreaPaint;
+    private final Paint estimatedCirclePaint;
+    private final Paint safeSectorPaint;
+    private final Paint trackPaint;
+    private static final int TrackCapacity = 2048;
+    private final TrackStore track = new TrackStore(TrackCapacity);
+    private static final int GridSize = 128;
+    private static final double CellMeters = 2;
+    private final OccupancyGrid grid = new OccupancyGrid(GridSize, CellMeters/AnchorWatch.toMeters(1));
+    private final int[] heatPalette = new int[OccupancyGrid.Levels];
+    private final int[] dirtyCells = new int[256];
+    private int[] heatPixels;
+    private Bitmap heat;
+    private final Paint heatPaint;
+    private final Drawer drawer = new Drawer();
+    private final Pending pending = new Pending();
+    private final FixBuffer fixes = new FixBuffer();
+    private boolean clearTrack;
+    private boolean areaChanged;
+    private boolean estimatedChanged;
+    private boolean sectorChanged;
+    private boolean extendToSector;
+    private boolean fitToSector;
+    private static final float TrackTolerance = 2;
+    private final ScaleGestureDetector scaleDetector;
+    private int panPointerId = -1;
+    private float panX;
+    private float panY;
+    private double lastX;
+    private double lastY;
+    private double[] area = new double[32];
+    private int areaCount;
+    private boolean hasEstimated;
+    private double estimatedX;
+    private double estimatedY;
+    private double estimatedRadius;
+    private SafeSector safe;
+    private static final int EditDown = 0;
+    private static final int EditMove = 1;
+    private static final int EditUp = 2;
+    private static final int EditCancel = 3;
+    private final Map<Integer,Cursor> cursorMap = new HashMap<>();
+    private final AtomicInteger editingPointers = new AtomicInteger();
+    private final EditQueue edits = new EditQueue();
+    private final Runnable drainEdits = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            drainEdits();
+        }
+    };
+    private volatile Executor engineExecutor;
+    private volatile boolean hasSafe;
+    private final SectorShape sector = new SectorShape();
+    private boolean simulate;
+    private String distanceUnit = "m";
+    private float touchRadius;
+    private boolean usedArea;
+    private final String unitMeters;
+    private final String unitFeet;
+    private final String formatMeters;
+    private final String formatFeet;
+    private final String simulateText;
+    private String distanceText;
+    private double distanceTextRadius = Double.NaN;
+    private static final long AttendedMillis = 60000;
+    private long unattendedFrameMillis;
+    private volatile long lastTouchMillis;
+    private volatile long lastFrameMillis;
+    private final AtomicBoolean framePending = new AtomicBoolean();
+    private final AtomicLong requestedFrames = new AtomicLong();
+    private final AtomicLong renderedFrames = new AtomicLong();
+    private Bitmap layer;
+    private Canvas layerCanvas;
+    private boolean layerDirty = true;
+    private long layerRebuilds;
+    private long drawNanos;
+    private volatile Metrics.Timer drawTimer;
+    private final Runnable frame = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            framePending.set(false);
+            invalidate();
+        }
+    };
+
+    public AnchorView(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+        TypedArray a = context.getTheme().obtainStyledAttributes(attrs, R.styleable.AnchorView, 0, 0);
+        try
+        {
+            pointPaint = new Paint();
+            pointPaint.setStyle(Paint.Style.STROKE);
+            pointPaint.setColor(a.getColor(R.styleable.AnchorView_pointColor, Color.WHITE));
+            areaPaint = new Paint();
+            areaPaint.setStyle(Paint.Style.STROKE);
+            areaPaint.setColor(a.getColor(R.styleable.AnchorView_areaColor, Color.BLUE));
+            usedAreaPaint = new Paint();
+            usedAreaPaint.setStyle(Paint.Style.STROKE);
+            usedAreaPaint.setColor(a.getColor(R.styleable.AnchorView_usedAreaColor, Color.CYAN));
+            estimatedCirclePaint = new Paint();
+            estimatedCirclePaint.setStyle(Paint.Style.STROKE);
+            estimatedCirclePaint.setColor(a.getColor(R.styleable.AnchorView_estimatedCircleColor, Color.MAGENTA));
+            safeSectorPaint = new Paint();
+            safeSectorPaint.setStyle(Paint.Style.STROKE);
+            safeSectorPaint.setColor(a.getColor(R.styleable.AnchorView_safeSectorColor, Color.GREEN));
+            trackPaint = new Paint();
+            trackPaint.setStyle(Paint.Style.STROKE);
+            trackPaint.setColor(a.getColor(R.styleable.AnchorView_trackColor, Color.GRAY));
+            heatPaint = new Paint();
+            heatPaint.setFilterBitmap(false);
+            int heatColor = a.getColor(R.styleable.AnchorView_heatColor, Color.YELLOW) & 0xffffff;
+            for (int ii=1;ii<OccupancyGrid.Levels;ii++)
+            {
+                int alpha = 0x20 + 0xc0*(ii-1)/(OccupancyGrid.Levels-2);
+                heatPalette[ii] = (alpha<<24) | heatColor;
+            }
+            setUnattendedFrameRate(a.getFloat(R.styleable.AnchorView_unattendedFrameRate, 1));
+        }
+        finally
+        {
+            a.recycle();
+        }
+        unitMeters = context.getString(R.string.distance_unit_meters);
+        unitFeet = context.getString(R.string.distance_unit_feet);
+        formatMeters = context.getString(R.string.distance_unit_short_format_meters);
+        formatFeet = context.getString(R.string.distance_unit_short_format_feet);
+        simulateText = context.getString(R.string.simulate);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener()
+        {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector)
+            {
+                drawer.zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                requestFrame();
+                return true;
+            }
+        });
+    }
+
+    public void setSimulate(boolean simulate)
+    {
+        Log.d(LogTitle, "AnchorView.setSimulate("+simulate+")");
+        synchronized (pending)
+        {
+            if (simulate != pending.simulate)
+            {
+                pending.clear = true;
+                pending.fixes.clear();
+            }
+            pending.simulate = simulate;
+            pending.layerDirty = true;
+        }
+        requestFrame();
+    }
+    
+    void setDistanceUnit(String distanceUnit)
+    {
+        synchronized (pending)
+        {
+            pending.distanceUnit = distanceUnit;
+            pending.layerDirty = true;
+        }
+        requestFrame();
+    }
+    /**
+     * Sets maximum frame rate when view is not touched. Zero or negative
+     * means no limit.
+     * @param fps 
+     */
+    public void setUnattendedFrameRate(float fps)
+    {
+        unattendedFrameMillis = fps > 0 ? (long) (1000/fps) : 0;
+    }
+
+    public long getRequestedFrames()
+    {
+        return requestedFrames.get();
+    }
+
+    public long getRenderedFrames()
+    {
+        return renderedFrames.get();
+    }
+    /**
+     * Returns how many times cached layer has been redrawn. Called in main
+     * thread.
+     * @return 
+     */
+    public long getLayerRebuilds()
+    {
+        return layerRebuilds;
+    }
+    /**
+     * Returns total nanoseconds spent in onDraw. Called in main thread.
+     * @return 
+     */
+    public long getDrawNanos()
+    {
+        return drawNanos;
+    }
+    /**
+     * Sets timer where onDraw time is added.
+     * @param drawTimer Timer or null
+     */
+    public void setDrawTimer(Metrics.Timer drawTimer)
+    {
+        this.drawTimer = drawTimer;
+    }
+    /**
+     * Requests redraw. Can be called from any thread.
+     */
+    private void requestFrame()
+    {
+        requestedFrames.incrementAndGet();
+        if (framePending.compareAndSet(false, true))
+        {
+            long now = SystemClock.uptimeMillis();
+            long delay = 0;
+            if (now - lastTouchMillis > AttendedMillis)
+            {
+                delay = Math.max(0, lastFrameMillis + unattendedFrameMillis - now);
+            }
+            postOnAnimationDelayed(frame, delay);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        lastTouchMillis = SystemClock.uptimeMillis();
+        framePending.set(false);
+        requestFrame();
+    }
+    
+    @Override
+    protected void onDraw(Canvas canvas)
+    {
+        super.onDraw(canvas);
+        renderedFrames.incrementAndGet();
+        lastFrameMillis = SystemClock.uptimeMillis();
+        long start = System.nanoTime();
+        synchronized (pending)
+        {
+            takePending();
+        }
+        applyPending();
+        draw(canvas);
+        long nanos = System.nanoTime() - start;
+        drawNanos += nanos;
+        Metrics.Timer timer = drawTimer;
+        if (timer != null)
+        {
+            timer.add(nanos);
+        }
+    }
+    /**
+     * Copies pending state. Called in main thread holding pending lock, so
+     * only copies are made here.
+     */
+    private void takePending()
+    {
+        Pending p = pending;
+        fixes.set(p.fixes);
+        p.fixes.clear();
+        if (p.clear)
+        {
+            clearTrack = true;
+            p.clear = false;
+        }
+        simulate = p.simulate;
+        if (!distanceUnit.equals(p.distanceUnit))
+        {
+            distanceUnit = p.distanceUnit;
+            distanceText = null;
+        }
+        if (p.layerDirty)
+        {
+            layerDirty = true;
+            p.layerDirty = false;
+        }
+        if (p.areaChanged)
+        {
+            if (area.length < p.area.length)
+            {
+                area = new double[p.area.length];
+            }
+            System.arraycopy(p.area, 0, area, 0, 2*p.areaCount);
+            areaCount = p.areaCount;
+            areaChanged = true;
+            p.areaChanged = false;
+        }
+        if (p.usedArea)
+        {
+            usedArea = true;
+            layerDirty = true;
+            p.usedArea = false;
+        }
+        if (p.estimatedChanged)
+        {
+            hasEstimated = true;
+            estimatedX = p.estimatedX;
+            estimatedY = p.estimatedY;
+            estimatedRadius = p.estimatedRadius;
+            estimatedChanged = true;
+            p.estimatedChanged = false;
+        }
+        if (p.sectorChanged)
+        {
+            sector.set(p.sector);
+            sectorChanged = true;
+            extendToSector |= p.extendToSector;
+            fitToSector |= p.fitToSector;
+            p.sectorChanged = false;
+            p.extendToSector = false;
+            p.fitToSector = false;
+        }
+    }
+    /**
+     * Applies copied state to track, grid and drawer. Called in main thread.
+     */
+    private void applyPending()
+    {
+        if (clearTrack)
+        {
+            track.clear();
+            grid.clear();
+            clearTrack = false;
+        }
+        int n = fixes.count;
+        for (int ii=0;ii<n;ii++)
+        {
+            double x = fixes.x[ii];
+            double y = fixes.y[ii];
+            long time = fixes.time[ii];
+            lastX = x;
+            lastY = y;
+            drawer.updatePoint(x, y);
+            track.add(time, x, y, fixes.accuracy[ii], fixes.speed[ii]);
+            grid.add(x, y, time);
+        }
+        fixes.clear();
+        if (areaChanged)
+        {
+            for (int ii=0;ii<areaCount;ii++)
+            {
+                drawer.updatePoint(area[2*ii], area[2*ii+1]);
+            }
+            drawer.polygonChanged();
+            layerDirty = true;
+            areaChanged = false;
+        }
+        if (estimatedChanged)
+        {
+            updateEstimated();
+            if (!grid.isCentered() || Math.hypot(estimatedX - grid.getCenterX(), estimatedY - grid.getCenterY()) > GridSize*grid.getCellSize()/4)
+            {
+                grid.setCenter(estimatedX, estimatedY);
+            }
+            layerDirty = true;
+            estimatedChanged = false;
+        }
+        if (sectorChanged)
+        {
+            if (fitToSector)
+            {
+                drawer.reset();
+                drawer.updatePoint(lastX, lastY);
+                for (int ii=0;ii<areaCount;ii++)
+                {
+                    drawer.updatePoint(area[2*ii], area[2*ii+1]);
+                }
+                if (hasEstimated)
+                {
+                    updateEstimated();
+                }
+                drawer.updateCircle(sector);
+            }
+            else
+            {
+                if (extendToSector)
+                {
+                    drawer.updateCircle(sector);
+                }
+            }
+            layerDirty = true;
+            sectorChanged = false;
+            extendToSector = false;
+            fitToSector = false;
+        }
+    }
+
+    private void updateEstimated()
+    {
+        drawer.updatePoint(estimatedX-estimatedRadius, estimatedY-estimatedRadius);
+        drawer.updatePoint(estimatedX+estimatedRadius, estimatedY+estimatedRadius);
+    }
+    
+    private void draw(Canvas canvas)
+    {
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        if (layer == null || layer.getWidth() != width || layer.getHeight() != height)
+        {
+            if (layer != null)
+            {
+                layer.recycle();
+            }
+            layer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            layerCanvas = new Canvas(layer);
+            layerDirty = true;
+        }
+        drawer.setCanvas(layerCanvas);
+        if (drawer.transformChanged() || layerDirty || drawer.isTrackReset(track))
+        {
+            layer.eraseColor(Color.TRANSPARENT);
+            drawLayer(width, height);
+            layerDirty = false;
+            layerRebuilds++;
+        }
+        else
+        {
+            drawer.drawTrack(track, false, trackPaint);
+        }
+        drawer.setCanvas(canvas);
+        if (grid.isCentered())
+        {
+            updateHeat();
+            drawer.drawGrid(grid, heat, heatPaint);
+        }
+        canvas.drawBitmap(layer, 0, 0, null);
+        drawer.drawPoint(lastX, lastY, pointPaint);
+    }
+    
+    /**
+     * Updates changed grid cells to heat bitmap.
+     */
+    private void updateHeat()
+    {
+        if (heat == null)
+        {
+            heat = Bitmap.createBitmap(GridSize, GridSize, Bitmap.Config.ARGB_8888);
+        }
+        if (grid.isAllDirty())
+        {
+            if (heatPixels == null)
+            {
+                heatPixels = new int[GridSize*GridSize];
+            }
+            for (int ii=0;ii<heatPixels.length;ii++)
+            {
+                heatPixels[ii] = heatPalette[grid.getLevel(ii)];
+            }
+            heat.setPixels(heatPixels, 0, GridSize, 0, 0, GridSize, GridSize);
+        }
+        int n = grid.drainDirty(dirtyCells);
+        while (n > 0)
+        {
+            for (int ii=0;ii<n;ii++)
+            {
+                int cell = dirtyCells[ii];
+                heat.setPixel(cell % GridSize, cell / GridSize, heatPalette[grid.getLevel(cell)]);
+            }
+            n = grid.drainDirty(dirtyCells);
+        }
+    }
+
+    private void drawLayer(int width, int height)
+    {
+        if (simulate)
+        {
+            int h = height / 10;
+            for (int ii=0,jj=0;ii<height;ii+=h,jj+=h)
+            {
+                drawer.drawText(simulateText, jj % width, ii, pointPaint);
+            }
+        }
+        drawer.drawTrack(track, true, trackPaint);
+        drawer.drawPolygon(area, areaCount, areaPaint);
+        if (usedArea)
+        {
+            drawer.drawPath(area, areaCount, usedAreaPaint);
+            usedArea = false;
+        }
+        if (hasEstimated)
+        {
+            drawer.drawCircle(estimatedX, estimatedY, estimatedRadius, estimatedCirclePaint);
+        }
+        if (sector.valid)
+        {
+            drawer.drawSectorWithInnerCircle(sector, safeSectorPaint);
+            double x = sector.getX();
+            double y = sector.getY();
+            double r = sector.getRadius();
+            drawer.drawLine(x, y, x + r, y, safeSectorPaint);
+            if (distanceText == null || r != distanceTextRadius)
+            {
+                distanceText = getDistance(r);
+                distanceTextRadius = r;
+            }
+            drawer.drawText(distanceText, x + r / 2, y, safeSectorPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event)
+    {
+        lastTouchMillis = SystemClock.uptimeMillis();
+        scaleDetector.onTouchEvent(event);
+        return touch(event);
+    }
+    
+    private boolean touch(MotionEvent event)
+    {
+        double r = drawer.worldScale(touchRadius);
+        int pointerIndex = event.getActionIndex();
+        int pointerId = event.getPointerId(pointerIndex);
+        int actionMasked = event.getActionMasked();
+        switch (actionMasked)
+        {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (hasSafe)
+                {
+                    double x = drawer.worldX(event.getX(pointerIndex));
+                    double y = drawer.worldY(event.getY(pointerIndex));
+                    postEdit(EditDown, pointerId, x, y, r);
+                }
+                if (actionMasked == MotionEvent.ACTION_DOWN)
+                {
+                    panPointerId = pointerId;
+                    panX = event.getX(pointerIndex);
+                    panY = event.getY(pointerIndex);
+                }
+                else
+                {
+                    panPointerId = -1;
+                }
+                break;
+            case MotionEvent.ACTION_MOVE:
+                int cnt = event.getPointerCount();
+                for (int ii=0;ii<cnt;ii++)
+                {
+                    int p = event.getPointerId(ii);
+                    if (isEditing(p))
+                    {
+                        double x = drawer.worldX(event.getX(ii));
+                        double y = drawer.worldY(event.getY(ii));
+                        postEdit(EditMove, p, x, y, r);
+                    }
+                }
+                if (panPointerId != -1 && !isEditing(panPointerId) && !scaleDetector.isInProgress())
+                {
+                    int index = event.findPointerIndex(panPointerId);
+                    if (index != -1)
+                    {
+                        float x = event.getX(index);
+                        float y = event.getY(index);
+                        drawer.pan(x - panX, y - panY);
+                        panX = x;
+                        panY = y;
+                        requestFrame();
+                    }
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                if (pointerId == panPointerId)
+                {
+                    panPointerId = -1;
+                }
+                if (isEditing(pointerId))
+                {
+                    double x = drawer.worldX(event.getX(pointerIndex));
+                    double y = drawer.worldY(event.getY(pointerIndex));
+                    postEdit(EditUp, pointerId, x, y, r);
+                }
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                postEdit(EditCancel, pointerId, 0, 0, 0);
+                panPointerId = -1;
+                break;
+        }
+        return true;
+    }
+
+    private boolean isEditing(int pointerId)
+    {
+        return pointerId < 32 && (editingPointers.get() & (1<<pointerId)) != 0;
+    }
+
+    private void setEditing(int pointerId, boolean editing)
+    {
+        if (pointerId < 32)
+        {
+            int bit = 1<<pointerId;
+            while (true)
+            {
+                int old = editingPointers.get();
+                if (editingPointers.compareAndSet(old, editing ? old | bit : old & ~bit))
+                {
+                    break;
+                }
+            }
+        }
+    }
+    /**
+     * Queues safe sector edit to engine thread. Drain is posted only when
+     * queue was empty.
+     */
+    private void postEdit(int action, int pointerId, double x, double y, double r)
+    {
+        Executor executor = engineExecutor;
+        if (executor != null)
+        {
+            if (edits.add(action, pointerId, x, y, r))
+            {
+                executor.execute(drainEdits);
+            }
+        }
+    }
+    /**
+     * Edits safe sector with queued edits. Called in engine thread.
+     */
+    private void drainEdits()
+    {
+        EditQueue q = edits;
+        while (true)
+        {
+            int action;
+            int pointerId;
+            double x;
+            double y;
+            double r;
+            synchronized (q)
+            {
+                if (q.head == q.count)
+                {
+                    q.head = 0;
+                    q.count = 0;
+                    return;
+                }
+                int ii = q.head++;
+                action = q.action[ii];
+                pointerId = q.pointer[ii];
+                x = q.x[ii];
+                y = q.y[ii];
+                r = q.r[ii];
+            }
+            edit(action, pointerId, x, y, r);
+        }
+    }
+    /**
+     * Edits safe sector. Called in engine thread.
+     */
+    private void edit(int action, int pointerId, double x, double y, double r)
+    {
+        Cursor cursor;
+        switch (action)
+        {
+            case EditDown:
+                if (safe != null)
+                {
+                    cursor = safe.getCursor(x, y, r);
+                    if (cursor != null)
+                    {
+                        cursorMap.put(pointerId, cursor);
+                        setEditing(pointerId, true);
+                        Log.d(LogTitle, "put "+pointerId+" "+cursor);
+                        sectorEdited(false);
+                    }
+                }
+                break;
+            case EditMove:
+                cursor = cursorMap.get(pointerId);
+                if (cursor != null)
+                {
+                    cursorMap.put(pointerId, cursor.update(x, y));
+                    sectorEdited(false);
+                }
+                break;
+            case EditUp:
+                cursor = cursorMap.remove(pointerId);
+                setEditing(pointerId, false);
+                if (cursor != null)
+                {
+                    cursor.ready(x, y);
+                    Log.d(LogTitle, "rem "+pointerId+" "+cursor);
+                    sectorEdited(true);
+                }
+                break;
+            case EditCancel:
+                cursorMap.remove(pointerId);
+                setEditing(pointerId, false);
+                break;
+        }
+    }
+    /**
+     * Copies edited sector. Called in engine thread.
+     * @param fit If true, screen transform is fitted again.
+     */
+    private void sectorEdited(boolean fit)
+    {
+        synchronized (pending)
+        {
+            pending.sector.set(safe);
+            pending.sectorChanged = true;
+            pending.fitToSector |= fit;
+        }
+        requestFrame();
+    }
+    /**
+     * Sets executor of engine thread, where safe sector is edited.
+     * @param engineExecutor Executor or null if service is not bound.
+     */
+    public void setEngineExecutor(Executor engineExecutor)
+    {
+        this.engineExecutor = engineExecutor;
+    }
+
+    public void onStatusChanged(String provider, int status, Bundle extras)
+    {
+    }
+
+    public void onProviderEnabled(String provider)
+    {
+    }
+
+    public void onProviderDisabled(String provider)
+    {
+    }
+
+    @Override
+    public void alarm(double distance)
+    {
+    }
+
+    @Override
+    public void location(double x, double y, long time, double accuracy, double speed)
+    {
+        synchronized (pending)
+        {
+            pending.fixes.add(time, x, y, accuracy, speed);
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void area(ConvexPolygon area)
+    {
+        synchronized (pending)
+        {
+            DenseMatrix64F m = area.points;
+            int len = 2*m.numRows;
+            if (pending.sameArea(m.data, m.numRows))
+            {
+                return;
+            }
+            if (pending.area.length < len)
+            {
+                pending.area = new double[Math.max(len, 2*pending.area.length)];
+            }
+            System.arraycopy(m.data, 0, pending.area, 0, len);
+            pending.areaCount = m.numRows;
+            pending.areaChanged = true;
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void outer(DenseMatrix64F path)
+    {
+        synchronized (pending)
+        {
+            if (pending.usedArea)
+            {
+                return;
+            }
+            pending.usedArea = true;
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void estimated(Circle estimated)
+    {
+        synchronized (pending)
+        {
+            double x = estimated.getX();
+            double y = estimated.getY();
+            double r = estimated.getRadius();
+            if (pending.hasEstimated && x == pending.estimatedX && y == pending.estimatedY && r == pending.estimatedRadius)
+            {
+                return;
+            }
+            pending.hasEstimated = true;
+            pending.estimatedX = x;
+            pending.estimatedY = y;
+            pending.estimatedRadius = r;
+            pending.estimatedChanged = true;
+        }
+        requestFrame();
+    }
+
+    @Override
+    public void safeSector(SafeSector safe)
+    {
+        this.safe = safe;
+        synchronized (pending)
+        {
+            if (!pending.sector.set(safe) && hasSafe)
+            {
+                return;
+            }
+            pending.sectorChanged = true;
+            pending.extendToSector = true;
+        }
+        hasSafe = true;
+        requestFrame();
+    }
+
+    @Override
+    public void suggestNextUpdateIn(double seconds, double meters)
+    {
+    }
+
+    private String getDistance(double r)
+    {
+        if (unitFeet.equals(distanceUnit))
+        {
+            return String.format(formatFeet, Feet.fromMeters(AnchorWatch.toMeters(r)));
+        }
+        else
+        {
+            return String.format(formatMeters, AnchorWatch.toMeters(r));
+        }
+    }
+
+    public void setTouchRadius(float touchRadius)
+    {
+        this.touchRadius = touchRadius;
+    }
+
+    /**
+     * Keeps screen projected line arrays of polygon, path and track in
+     * ScreenLines. They are recalculated only when transform or shape has
+     * changed and drawn with single drawLines call. Track lines are extended
+     * with new fixes only.
+     *
+     * <p>Zoom and pan are applied on top of the fitted AbstractView
+     * transform. Zoom is around screen center and pan is in pixels.
+     */
+    private class Drawer extends AbstractView
+    {
+
+        private static final double MaxZoom = 64;
+        private Canvas canvas;
+        private int width;
+        private int height;
+        private double zoom = 1;
+        private double shiftX;
+        private double shiftY;
+        private final ScreenLines lines = new ScreenLines(TrackTolerance);
+        private final RectF sectorRect = new RectF();
+        private final RectF innerRect = new RectF();
+        private final RectF gridRect = new RectF();
+
+        public Drawer()
+        {
+            super();
+        }
+
+        private void setCanvas(Canvas canvas)
+        {
+            this.canvas = canvas;
+            width = canvas.getWidth();
+            height = canvas.getHeight();
+            setScreen(width, height);
+        }
+
+        private double screenX(double x)
+        {
+            return (toScreenX(x) - width/2.0)*zoom + width/2.0 + shiftX;
+        }
+
+        private double screenY(double y)
+        {
+            return (toScreenY(y) - height/2.0)*zoom + height/2.0 + shiftY;
+        }
+
+        private double screenScale(double r)
+        {
+            return scaleToScreen(r)*zoom;
+        }
+
+        private double worldX(double x)
+        {
+            return fromScreenX((x - shiftX - width/2.0)/zoom + width/2.0);
+        }
+
+        private double worldY(double y)
+        {
+            return fromScreenY((y - shiftY - height/2.0)/zoom + height/2.0);
+        }
+
+        private double worldScale(double r)
+        {
+            return scaleFromScreen(r/zoom);
+        }
+        /**
+         * Zooms around focus point. Zoom is kept between fitted scale and
+         * MaxZoom times that. Pan is cleared at fitted scale.
+         * @param factor
+         * @param focusX
+         * @param focusY 
+         */
+        private void zoom(double factor, double focusX, double focusY)
+        {
+            double z = Math.min(Math.max(zoom*factor, 1), MaxZoom);
+            if (z == 1)
+            {
+                shiftX = 0;
+                shiftY = 0;
+            }
+            else
+            {
+                double f = z/zoom;
+                shiftX = (width/2.0 + shiftX - focusX)*f + focusX - width/2.0;
+                shiftY = (height/2.0 + shiftY - focusY)*f + focusY - height/2.0;
+            }
+            zoom = z;
+        }
+        /**
+         * Pans zoomed view.
+         * @param dx
+         * @param dy 
+         */
+        private void pan(double dx, double dy)
+        {
+            if (zoom > 1)
+            {
+                shiftX += dx;
+                shiftY += dy;
+            }
+        }
+        /**
+         * Returns true if world to screen transform has changed since last 
+         * call.
+         * @return 
+         */
+        private boolean transformChanged()
+        {
+            double ox = screenX(0);
+            double oy = screenY(0);
+            return lines.setTransform(ox, screenX(1) - ox, oy, screenY(1) - oy, width, height);
+        }
+        /**
+         * Invalidates projected polygon and path.
+         */
+        private void polygonChanged()
+        {
+            lines.polygonChanged();
+        }
+        /**
+         * Returns true if whole track must be drawn again because track was
+         * thinned or cleared or transform has changed. Layer must then be
+         * cleared before drawing.
+         * @param store
+         * @return 
+         */
+        private boolean isTrackReset(TrackStore store)
+        {
+            return lines.isTrackReset(store);
+        }
+        /**
+         * Draws track. Only fixes added after last call are projected unless
+         * transform has changed or track was thinned. Fixes are streamed
+         * through simplifier, so that lines depend on screen size rather
+         * than on track length.
+         * @param store
+         * @param all If true all track is drawn, otherwise only new segments.
+         * @param paint 
+         */
+        private void drawTrack(TrackStore store, boolean all, Paint paint)
+        {
+            int from = lines.updateTrack(store);
+            int start = all ? 0 : from;
+            int length = lines.getTrackLength();
+            if (length > start)
+            {
+                canvas.drawLines(lines.getTrackLines(), start, length - start, paint);
+            }
+        }
+
+        /**
+         * Draws grid bitmap scaled to grid area.
+         * @param grid
+         * @param bitmap Bitmap with one pixel per cell
+         * @param paint 
+         */
+        private void drawGrid(OccupancyGrid grid, Bitmap bitmap, Paint paint)
+        {
+            double side = grid.getSize()*grid.getCellSize();
+            float x1 = (float) screenX(grid.getLeft());
+            float y1 = (float) screenY(grid.getTop());
+            float x2 = (float) screenX(grid.getLeft() + side);
+            float y2 = (float) screenY(grid.getTop() - side);
+            gridRect.set(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+            canvas.drawBitmap(bitmap, null, gridRect, paint);
+        }
+
+        private void drawPoint(double x, double y, Paint paint)
+        {
+            float tx = (float) screenX(x);
+            float ty = (float) screenY(y);
+            canvas.drawCircle(tx, ty, 5, paint);
+        }
+
+        private void drawCircle(Circle circle, Paint paint)
+        {
+            drawCircle(circle.getX(), circle.getY(), circle.getRadius(), paint);
+        }
+
+        private void drawCircle(double x, double y, double r, Paint paint)
+        {
+            float sx = (float) screenX(x);
+            float sy = (float) screenY(y);
+            float sr = (float) screenScale(r);
+            canvas.drawCircle(sx, sy, sr, paint);
+        }
+
+        private void drawSectorWithInnerCircle(SectorShape sector, Paint paint)
+        {
+            if (sector.circle)
+            {
+                drawCircle(sector, paint);
+            }
+            else
+            {
+                float la = (float) sector.left;
+                float ra = (float) sector.right;
+                RectF rect = getRectF(sector.x, sector.y, sector.radius, sectorRect);
+                float sweep = 360 - (float) Math.toDegrees(Angle.normalizeToFullAngle(Angle.angleDiff(la, ra)));
+                float dl = 360 - (float) Math.toDegrees(la);
+                canvas.drawArc(rect, dl, sweep, true, paint);
+                rect = getRectF(sector.innerX, sector.innerY, sector.innerRadius, innerRect);
+                sweep = 360 - (float) Math.toDegrees(Angle.normalizeToFullAngle(Angle.angleDiff(ra, la)));
+                float dr = 360 - (float) Math.toDegrees(ra);
+                canvas.drawArc(rect, dr, sweep, true, paint);
+            }
+        }
+
+        private RectF getRectF(double x, double y, double r, RectF rect)
+        {
+                float sx = (float) screenX(x);
+                float sy = (float) screenY(y);
+                float sr = (float) screenScale(r);
+                rect.set(
+                        sx - sr,
+                        sy - sr,
+                        sx + sr,
+                        sy + sr
+                );
+                return rect;
+        }
+        private void drawText(String text, double x, double y, Paint paint)
+        {
+            int ix = (int) screenX(x);
+            int iy = (int) screenY(y);
+            canvas.drawText(text, ix, iy, paint);
+        }
+
+        private void drawText(String text, int x, int y, Paint paint)
+        {
+            canvas.drawText(text, x, y, paint);
+        }
+
+        private void drawLine(double x1, double y1, double x2, double y2, Paint paint)
+        {
+            int ix1 = (int) screenX(x1);
+            int iy1 = (int) screenY(y1);
+            int ix2 = (int) screenX(x2);
+            int iy2 = (int) screenY(y2);
+            canvas.drawLine(ix1, iy1, ix2, iy2, paint);
+        }
+
+        private void drawPolygon(double[] d, int rows, Paint paint)
+        {
+            int length = lines.projectPolygon(d, rows);
+            if (length > 0)
+            {
+                canvas.drawLines(lines.getPolygonLines(), 0, length, paint);
+            }
+        }
+
+        private void drawPath(double[] d, int rows, Paint paint)
+        {
+            int length = lines.projectPath(d, rows);
+            if (length > 0)
+            {
+                canvas.drawLines(lines.getPathLines(), 0, length, paint);
+            }
+        }
+
+    }
+
+    /**
+     * State written by engine thread and setters. Values are the latest
+     * ones, flags tell what main thread hasn't taken yet.
+     */
+    private static class Pending
+    {
+        private final FixBuffer fixes = new FixBuffer();
+        private boolean clear;
+        private boolean simulate;
+        private String distanceUnit = "m";
+        private boolean layerDirty;
+        private double[] area = new double[32];
+        private int areaCount;
+        private boolean areaChanged;
+        private boolean usedArea;
+        private boolean hasEstimated;
+        private double estimatedX;
+        private double estimatedY;
+        private double estimatedRadius;
+        private boolean estimatedChanged;
+        private final SectorShape sector = new SectorShape();
+        private boolean sectorChanged;
+        private boolean extendToSector;
+        private boolean fitToSector;
+        /**
+         * Returns true if area has the same vertices.
+         */
+        private boolean sameArea(double[] data, int rows)
+        {
+            if (rows != areaCount)
+            {
+                return false;
+            }
+            for (int ii=0;ii<2*rows;ii++)
+            {
+                if (data[ii] != area[ii])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    /**
+     * Fixes received between frames. Arrays grow when frames are late, so
+     * that no fix is lost.
+     */
+    private static class FixBuffer
+    {
+        private long[] time = new long[16];
+        private double[] x = new double[16];
+        private double[] y = new double[16];
+        private double[] accuracy = new double[16];
+        private double[] speed = new double[16];
+        private int count;
+
+        private void add(long time, double x, double y, double accuracy, double speed)
+        {
+            if (count == this.time.length)
+            {
+                grow(2*count);
+            }
+            this.time[count] = time;
+            this.x[count] = x;
+            this.y[count] = y;
+            this.accuracy[count] = accuracy;
+            this.speed[count] = speed;
+            count++;
+        }
+
+        private void set(FixBuffer other)
+        {
+            if (time.length < other.count)
+            {
+                grow(other.time.length);
+            }
+            System.arraycopy(other.time, 0, time, 0, other.count);
+            System.arraycopy(other.x, 0, x, 0, other.count);
+            System.arraycopy(other.y, 0, y, 0, other.count);
+            System.arraycopy(other.accuracy, 0, accuracy, 0, other.count);
+            System.arraycopy(other.speed, 0, speed, 0, other.count);
+            count = other.count;
+        }
+
+        private void grow(int length)
+        {
+            time = Arrays.copyOf(time, length);
+            x = Arrays.copyOf(x, length);
+            y = Arrays.copyOf(y, length);
+            accuracy = Arrays.copyOf(accuracy, length);
+            speed = Arrays.copyOf(speed, length);
+        }
+
+        private void clear()
+        {
+            count = 0;
+        }
+    }
+    /**
+     * Safe sector edits from main thread to engine thread. Queued moves of a
+     * pointer are replaced by the latest one. Entries from head to count
+     * are waiting.
+     */
+    private static class EditQueue
+    {
+        private static final int Capacity = 64;
+        private final int[] action = new int[Capacity];
+        private final int[] pointer = new int[Capacity];
+        private final double[] x = new double[Capacity];
+        private final double[] y = new double[Capacity];
+        private final double[] r = new double[Capacity];
+        private int head;
+        private int count;
+        /**
+         * Adds edit.
+         * @return true if queue was empty and drain must be posted.
+         */
+        private synchronized boolean add(int action, int pointerId, double x, double y, double r)
+        {
+            if (action == EditMove)
+            {
+                for (int ii=count-1;ii>=head;ii--)
+                {
+                    if (pointer[ii] == pointerId)
+                    {
+                        if (this.action[ii] == EditMove)
+                        {
+                            this.x[ii] = x;
+                            this.y[ii] = y;
+                            this.r[ii] = r;
+                            return false;
+                        }
+                        break;
+                    }
+                }
+            }
+            if (count == Capacity)
+            {
+                Log.d(LogTitle, "edit queue full, dropped "+action);
+                return false;
+            }
+            this.action[count] = action;
+            this.pointer[count] = pointerId;
+            this.x[count] = x;
+            this.y[count] = y;
+            this.r[count] = r;
+            count++;
+            return count == 1;
+        }
+    }
+    /**
+     * Copy of safe sector geometry for drawing in main thread.
+     */
+    private static class SectorShape implements Circle
+    {
+        private boolean valid;
+        private boolean circle;
+        private double x;
+        private double y;
+        private double radius;
+        private double left;
+        private double right;
+        private double innerX;
+        private double innerY;
+        private double innerRadius;
+
+        /**
+         * Copies sector.
+         * @param safe
+         * @return true if sector has changed.
+         */
+        private boolean set(SafeSector safe)
+        {
+            Circle inner = safe.getInnerCircle();
+            boolean changed =
+                    circle != safe.isCircle() ||
+                    x != safe.getX() ||
+                    y != safe.getY() ||
+                    radius != safe.getRadius() ||
+                    left != safe.getLeftAngle() ||
+                    right != safe.getRightAngle() ||
+                    innerX != inner.getX() ||
+                    innerY != inner.getY() ||
+                    innerRadius != inner.getRadius();
+            circle = safe.isCircle();
+            x = safe.getX();
+            y = safe.getY();
+            radius = safe.getRadius();
+            left = safe.getLeftAngle();
+            right = safe.getRightAngle();
+            innerX = inner.getX();
+            innerY = inner.getY();
+            innerRadius = inner.getRadius();
+            valid = true;
+            return changed;
+        }
+
+        private void set(SectorShape other)
+        {
+            valid = other.valid;
+            circle = other.circle;
+            x = other.x;
+            y = other.y;
+            radius = other.radius;
+            left = other.left;
+            right = other.right;
+            innerX = other.innerX;
+            innerY = other.innerY;
+            innerRadius = other.innerRadius;
+        }
+
+        @Override
+        public double getX()
+        {
+            return x;
+        }
+
+        @Override
+        public double getY()
+        {
+            return y;
+        }
+
+        @Override
+        public double getRadius()
+        {
+            return radius;
+        }
+    }
+
+}
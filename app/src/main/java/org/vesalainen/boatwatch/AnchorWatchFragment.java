@@ -15,6 +15,8 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import org.vesalainen.boatwatch.AnchorWatchService.AnchorWatchBinder;
+import org.vesalainen.boatwatch.engine.SettingBinder;
+import org.vesalainen.boatwatch.engine.SettingsSnapshot;
 import static org.vesalainen.boatwatch.BoatWatchConstants.*;
 import static org.vesalainen.boatwatch.Settings.DistanceUnit;
 import static org.vesalainen.boatwatch.Settings.Simulate;
@@ -22,6 +24,25 @@ import org.vesalainen.util.AbstractProvisioner.Setting;
 
 public class AnchorWatchFragment extends Fragment
 {
+    /**
+     * Binder of @Setting methods.
+     */
+    static final SettingBinder<AnchorWatchFragment> SettingsBinder = new SettingBinder<AnchorWatchFragment>(Simulate, DistanceUnit)
+    {
+        @Override
+        public void bind(AnchorWatchFragment fragment, String key, SettingsSnapshot settings)
+        {
+            switch (key)
+            {
+                case Simulate:
+                    fragment.setSimulate(settings.getBoolean(key, false));
+                    break;
+                case DistanceUnit:
+                    fragment.setDistanceUnit(settings.getString(key, "m"));
+                    break;
+            }
+        }
+    };
     public static final String Tag = "org.vesalainen.boatwatch.AnchorWatchFragment";
     private AnchorView anchorView;
     private BoatWatchActivity boatWatchActivity;
@@ -37,6 +58,8 @@ public class AnchorWatchFragment extends Fragment
             Log.d("AnchorWatchFragment", "onServiceConnected");
             binder = (AnchorWatchService.AnchorWatchBinder) service;
             binder.addWatcher(anchorView);
+            anchorView.setDrawTimer(binder.getDrawTimer());
+            anchorView.setEngineExecutor(binder.getEngineExecutor());
             bound = true;
         }
 
@@ -45,6 +68,8 @@ public class AnchorWatchFragment extends Fragment
         {
             Log.d("AnchorWatchFragment", "onServiceDisconnected");
             binder.removeWatcher(anchorView);
+            anchorView.setDrawTimer(null);
+            anchorView.setEngineExecutor(null);
             bound = false;
         }
 
@@ -91,7 +116,7 @@ public class AnchorWatchFragment extends Fragment
             Log.e(LogTitle, "AnchorView not found for id="+R.id.anchor_view);
         }
         anchorView.setTouchRadius(touchRadius);
-        Settings.attach(boatWatchActivity, this);
+        Settings.attach(boatWatchActivity, this, SettingsBinder);
     }
 
     @Override
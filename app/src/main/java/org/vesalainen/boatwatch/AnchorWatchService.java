@@ -0,0 +1,1318 @@
+/*
+ * Copyright (C) 2014 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.media.AudioManager;
+import android.media.AudioManager.OnAudioFocusChangeListener;
+import android.media.MediaPlayer;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import org.ejml.data.DenseMatrix64F;
+import org.vesalainen.boatwatch.engine.AnchorWatchEngine;
+import org.vesalainen.boatwatch.engine.Clock;
+import org.vesalainen.boatwatch.engine.DeadlineScheduler;
+import org.vesalainen.boatwatch.engine.FixIngest;
+import org.vesalainen.boatwatch.engine.FixQueue;
+import org.vesalainen.boatwatch.engine.FixSink;
+import org.vesalainen.boatwatch.engine.LocationSourceManager;
+import org.vesalainen.boatwatch.engine.Metrics;
+import org.vesalainen.boatwatch.engine.NmeaSource;
+import org.vesalainen.boatwatch.engine.ReplaySource;
+import org.vesalainen.boatwatch.engine.SettingBinder;
+import org.vesalainen.boatwatch.engine.SettingsSnapshot;
+import org.vesalainen.boatwatch.engine.SettingsTransaction;
+import org.vesalainen.boatwatch.engine.SimulatorSource;
+import org.vesalainen.boatwatch.engine.SleepPolicy;
+import org.vesalainen.boatwatch.engine.Snapshot;
+import org.vesalainen.boatwatch.engine.SnapshotCodec;
+import org.vesalainen.boatwatch.engine.TrackJournal;
+import org.vesalainen.boatwatch.engine.TrackRecorder;
+import org.vesalainen.boatwatch.engine.WallClock;
+import org.vesalainen.boatwatch.engine.WatcherDispatcher;
+import static org.vesalainen.boatwatch.BoatWatchActivity.*;
+import static org.vesalainen.boatwatch.BoatWatchConstants.*;
+import static org.vesalainen.boatwatch.Settings.*;
+import org.vesalainen.math.Circle;
+import org.vesalainen.math.ConvexPolygon;
+import org.vesalainen.navi.AnchorWatch;
+import org.vesalainen.navi.AnchorWatch.Watcher;
+import org.vesalainen.navi.SafeSector;
+import org.vesalainen.util.AbstractProvisioner.Setting;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class AnchorWatchService extends Service implements FixSink, Watcher, FixIngest.Listener, OnAudioFocusChangeListener
+{
+    private static final String BackupFilename = "anchorwatch.ser";
+    private static final String SnapshotFilename = "anchorwatch.snp";
+    private static final int SnapshotTrackCapacity = 16384;
+    private static final String JournalFilename = "anchorwatch.jnl";
+    private static final int JournalCapacity = 65536;
+    private static final int JournalSyncCount = 60;
+    private static final long JournalSyncMillis = 300000;
+    private static final long SimulatorPeriod = 1000;
+    private static final long SettingsDebounceMillis = 250;
+    private static final int RestoreBufferCapacity = 4096;
+    private static final long RestoreJoinMillis = 5000;
+    /**
+     * Binder of @Setting methods.
+     */
+    static final SettingBinder<AnchorWatchService> SettingsBinder = new SettingBinder<AnchorWatchService>(
+            Simulate, Source, NmeaAddress, RecordTrack, Accuracy, UnknownAccuracy, AccuracyAlarmTime, Mute, AlarmTone, DragSpeed, GPSMaxSleep)
+    {
+        @Override
+        public void bind(AnchorWatchService service, String key, SettingsSnapshot settings)
+        {
+            switch (key)
+            {
+                case Simulate:
+                    service.setSimulate(settings.getBoolean(key, false));
+                    break;
+                case Source:
+                    service.setLocationSource(settings.getString(key, "gps"));
+                    break;
+                case NmeaAddress:
+                    service.setNmeaAddress(settings.getString(key, ""));
+                    break;
+                case RecordTrack:
+                    service.setRecordTrack(settings.getBoolean(key, false));
+                    break;
+                case Accuracy:
+                    service.setMinAccuracy(settings.getInt(key, 0));
+                    break;
+                case UnknownAccuracy:
+                    service.setUnknownAccuracy(settings.getInt(key, (int) AnchorWatchEngine.DefaultUnknownAccuracy));
+                    break;
+                case AccuracyAlarmTime:
+                    service.setAccuracyAlarmTime(settings.getInt(key, 0));
+                    break;
+                case Mute:
+                    service.setMuteTime(settings.getInt(key, 0));
+                    break;
+                case AlarmTone:
+                    service.setAlarmTone(settings.getString(key, null));
+                    break;
+                case DragSpeed:
+                    service.setDragSpeed(settings.getInt(key, 1));
+                    break;
+                case GPSMaxSleep:
+                    service.setGPSMaxSleep(settings.getInt(key, 0));
+                    break;
+            }
+        }
+    };
+    /**
+     * Binder that applies settings synchronously when service is attached
+     * and adds later changes to settings transaction. Transaction calls
+     * SettingsBinder in engine thread.
+     */
+    static final SettingBinder<AnchorWatchService> TransactionBinder = new SettingBinder<AnchorWatchService>(SettingsBinder.getKeys())
+    {
+        @Override
+        public void bind(AnchorWatchService service, String key, SettingsSnapshot settings)
+        {
+            service.settingsTransaction.changed(key, settings);
+        }
+
+        @Override
+        public void bindAll(AnchorWatchService service, SettingsSnapshot settings)
+        {
+            service.applyInitialSettings(settings);
+        }
+    };
+    private AnchorWatch watch;
+    private AnchorWatchEngine engine;
+    private FixIngest ingest;
+    private final WatcherDispatcher dispatcher = new WatcherDispatcher();
+    private HandlerThread engineThread;
+    private Handler engineHandler;
+    private volatile long fixCount;
+    private volatile long mainThreadFixNanos;
+    private volatile long engineThreadFixNanos;
+    private TrackJournal journal;
+    private TrackRecorder recorder;
+    private final Snapshot snapshot = new Snapshot(SnapshotTrackCapacity);
+    private final SnapshotCodec snapshotCodec = new SnapshotCodec();
+    private LocationSourceManager sources;
+    private ReplaySource replaySource;
+    private File recordFile;
+    private boolean simulating;
+    private String locationSource = GpsSource.Name;
+    private final IBinder binder = new AnchorWatchBinder();
+    private final boolean simulate = true;
+    private boolean stopping;
+    private String alarmTone;
+    private MediaPlayer mediaPlayer;
+    private PowerManager.WakeLock wakeLock;
+    private double gpsMinDistance = 1;
+    private Clock clock;
+    private DeadlineScheduler scheduler;
+    private SettingsTransaction settingsTransaction;
+    private boolean applyingSettings;
+    private int deferredGPSUpdates;
+    private int deferredSourceChanges;
+    private Metrics metrics;
+    private Metrics.Counter fixesReceived;
+    private Metrics.Counter fixesAccepted;
+    private Metrics.Counter fixesRejected;
+    private Metrics.Counter fixesFiltered;
+    private Metrics.Counter gpsRegistrations;
+    private Metrics.Counter avoidedRegistrations;
+    private Metrics.Counter avoidedSelections;
+    private Metrics.Counter gpsReregistrations;
+    private Metrics.Gauge sleepInterval;
+    private Metrics.Duration wakeLockHeld;
+    private Metrics.Counter alarms;
+    private Metrics.Timer dispatchTime;
+    private Metrics.Gauge enclosingRadius;
+    private Metrics.Timer drawTime;
+    private long createMillis;
+    private volatile boolean restoring;
+    private volatile long restoreMillis = -1;
+    private volatile long firstFixMillis = -1;
+    private Thread restoreThread;
+    private final FixQueue restoreBuffer = new FixQueue(RestoreBufferCapacity);
+    private final List<Runnable> afterRestore = new ArrayList<>();
+    private boolean settingsApplied;
+    private final FixQueue.Consumer restoreConsumer = new FixQueue.Consumer() 
+    {
+        @Override
+        public void fix(int source, long time, double longitude, double latitude, double accuracy, double speed)
+        {
+            AnchorWatchService.this.fix(time, longitude, latitude, accuracy, speed);
+        }
+    };
+    private final Executor engineExecutor = new Executor() 
+    {
+        @Override
+        public void execute(Runnable command)
+        {
+            runOnEngine(command);
+        }
+    };
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId)
+    {
+        Log.d("AnchorWatchService", "onStartCommand");
+        return START_STICKY;
+    }
+
+    /**
+     * Starts foreground notification, applies settings and starts location
+     * updates first. Snapshot and journal are read in restore thread and
+     * replayed in engine thread. Fixes arriving before that are buffered and
+     * handled after replay.
+     */
+    @Override
+    public void onCreate()
+    {
+        Log.d("AnchorWatchService", "onCreate");
+        super.onCreate();
+        createMillis = SystemClock.elapsedRealtime();
+        PendingIntent pi = PendingIntent.getActivity(getApplicationContext(), 0,
+                        new Intent(getApplicationContext(), BoatWatchActivity.class),
+                        PendingIntent.FLAG_UPDATE_CURRENT);
+        Notification.Builder mBuilder =
+            new Notification.Builder(this)
+            .setSmallIcon(R.drawable.ic_launcher)
+            .setContentTitle(getText(R.string.app_name))
+            .setContentText(getText(R.string.app_notification))
+            .setContentIntent(pi)
+            ;
+        Notification notification = mBuilder.build();
+        startForeground(1, notification);
+        clock = createClock();
+        createMetrics();
+        createDeadlines();
+        engineThread = new HandlerThread("AnchorWatchEngine");
+        engineThread.start();
+        engineHandler = new Handler(engineThread.getLooper());
+        watch = new AnchorWatch();
+        engine = new AnchorWatchEngine(watch);
+        ingest = new FixIngest(engine, scheduler, engineExecutor, this);
+        restoring = true;
+        createSources();
+        scheduler.start();
+        runOnEngine(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                acquireWakeLock(PowerManager.PARTIAL_WAKE_LOCK);
+            }
+        });
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0)
+        {
+            runOnEngine(new Runnable() 
+            {
+                @Override
+                public void run()
+                {
+                    dispatcher.setRadiusGauge(enclosingRadius);
+                }
+            });
+        }
+        dispatcher.setDispatchTimer(dispatchTime);
+        dispatcher.addWatcher(this);
+        Settings.attach(this, this, TransactionBinder);
+        restoreThread = new Thread(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                restore();
+            }
+        }, "AnchorWatchRestore");
+        restoreThread.start();
+    }
+    /**
+     * Reads snapshot and journal. Called in restore thread.
+     */
+    private void restore()
+    {
+        deleteFile(BackupFilename);
+        try
+        {
+            snapshotCodec.read(new File(getFilesDir(), SnapshotFilename), snapshot);
+            Log.d(LogTitle, "read "+snapshot.getTrackCount()+" fixes from "+SnapshotFilename);
+        }
+        catch (FileNotFoundException ex)
+        {
+            Log.d(LogTitle, "started from cratch");
+        }
+        catch (IOException ex)
+        {
+            Log.e(LogTitle, ex.getMessage(), ex);
+            snapshot.clear();
+        }
+        try
+        {
+            journal = new TrackJournal(new File(getFilesDir(), JournalFilename), JournalCapacity, JournalSyncCount, JournalSyncMillis);
+        }
+        catch (IOException ex)
+        {
+            Log.e(LogTitle, ex.getMessage(), ex);
+            journal = null;
+        }
+        if (journal != null && journal.hasReset())
+        {
+            snapshot.clear();
+        }
+        runOnEngine(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                completeRestore();
+            }
+        });
+    }
+    /**
+     * Replays restored state, then buffered fixes and deferred tasks.
+     * Called in engine thread.
+     */
+    private void completeRestore()
+    {
+        snapshot.replay(new Restorer(false));
+        if (journal != null)
+        {
+            Log.d(LogTitle, "replay "+journal.size()+" records from "+JournalFilename);
+            journal.replay(new Restorer(true));
+        }
+        watch.addWatcher(dispatcher);
+        restoring = false;
+        restoreMillis = SystemClock.elapsedRealtime() - createMillis;
+        Log.d(LogTitle, "restored in "+restoreMillis+" ms");
+        restoreBuffer.drain(restoreConsumer);
+        if (restoreBuffer.getDropped() > 0)
+        {
+            Log.d(LogTitle, "dropped "+restoreBuffer.getDropped()+" fixes while restoring");
+        }
+        for (Runnable task : afterRestore)
+        {
+            task.run();
+        }
+        afterRestore.clear();
+    }
+    /**
+     * Runs task in engine thread after restore is complete. Called in engine
+     * thread.
+     * @param task 
+     */
+    private void runAfterRestore(Runnable task)
+    {
+        if (restoring)
+        {
+            afterRestore.add(task);
+        }
+        else
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Applies settings and selects location source in engine thread and
+     * waits until done. Called when service is attached to settings in
+     * onCreate, so that accuracy watchdog is armed with settings in effect
+     * and restore starts after settings are applied.
+     * @param settings 
+     */
+    private void applyInitialSettings(final SettingsSnapshot settings)
+    {
+        final List<String> keys = new ArrayList<>();
+        for (String key : SettingsBinder.getKeys())
+        {
+            if (settings.contains(key))
+            {
+                keys.add(key);
+            }
+        }
+        runOnEngineAndWait(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                applySettings(settings, keys);
+                applySource();
+            }
+        });
+    }
+
+    /**
+     * Returns clock for deadlines and simulated fixes. Subclass can override
+     * to run service with other than system time.
+     * @return 
+     */
+    protected Clock createClock()
+    {
+        return new WallClock();
+    }
+
+    private void createMetrics()
+    {
+        metrics = new Metrics(clock);
+        fixesReceived = metrics.counter("fixes.received");
+        fixesAccepted = metrics.counter("fixes.accepted");
+        fixesRejected = metrics.counter("fixes.rejected");
+        fixesFiltered = metrics.counter("fixes.filtered");
+        gpsRegistrations = metrics.counter("gps.registrations");
+        avoidedRegistrations = metrics.counter("gps.avoidedRegistrations");
+        avoidedSelections = metrics.counter("source.avoidedSelections");
+        gpsReregistrations = metrics.counter("gps.reregistrations");
+        sleepInterval = metrics.gauge("gps.sleepMillis");
+        wakeLockHeld = metrics.duration("wakelock.held");
+        alarms = metrics.counter("alarms");
+        dispatchTime = metrics.timer("watcher.dispatch");
+        enclosingRadius = metrics.gauge("estimate.enclosingRadius");
+        drawTime = metrics.timer("view.draw");
+    }
+
+    private void createDeadlines()
+    {
+        scheduler = new DeadlineScheduler(clock, "AnchorWatchDeadlines");
+        settingsTransaction = new SettingsTransaction(scheduler, engineExecutor, SettingsDebounceMillis, new SettingsTransaction.Applier() 
+        {
+            @Override
+            public void apply(SettingsSnapshot settings, Collection<String> keys)
+            {
+                applySettings(settings, keys);
+            }
+        });
+    }
+    /**
+     * Applies changed settings in engine thread. Source selections and
+     * location update requests made while applying are combined to one
+     * each. Settings are applied also while restoring, so that buffered
+     * fixes are handled with them.
+     * @param settings
+     * @param keys 
+     */
+    private void applySettings(SettingsSnapshot settings, Collection<String> keys)
+    {
+        Log.d(LogTitle, "apply settings "+keys);
+        applyingSettings = true;
+        deferredGPSUpdates = 0;
+        deferredSourceChanges = 0;
+        try
+        {
+            for (String key : keys)
+            {
+                SettingsBinder.bind(this, key, settings);
+            }
+            if (engine.getSleepPolicy().reevaluate())
+            {
+                requestGPSUpdates();
+            }
+        }
+        finally
+        {
+            applyingSettings = false;
+            settingsApplied = true;
+        }
+        if (deferredSourceChanges > 0)
+        {
+            avoidedSelections.add(deferredSourceChanges - 1);
+            applySource();
+        }
+        if (deferredGPSUpdates > 0)
+        {
+            avoidedRegistrations.add(deferredGPSUpdates - 1);
+            requestGPSUpdates();
+        }
+    }
+
+    private void createSources()
+    {
+        sources = new LocationSourceManager(scheduler, engineExecutor, this);
+        sources.put(new GpsSource(this, engineThread.getLooper()));
+        sources.put(new SimulatorSource(scheduler, SimulatorPeriod));
+        replaySource = new ReplaySource(scheduler);
+        sources.put(replaySource);
+        sources.setFallback(GpsSource.Name);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent)
+    {
+        Log.d("AnchorWatchService", "onBind");
+        return binder;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        Log.d("AnchorWatchService", "onDestroy");
+        Log.d(LogTitle, "metrics\n"+metrics.dump());
+        try
+        {
+            restoreThread.join(RestoreJoinMillis);
+        }
+        catch (InterruptedException ex)
+        {
+            Log.e(LogTitle, ex.getMessage(), ex);
+        }
+        scheduler.stop();
+        ingest.cancel();
+        engineThread.quit();
+        try
+        {
+            engineThread.join(1000);
+        }
+        catch (InterruptedException ex)
+        {
+            Log.e(LogTitle, ex.getMessage(), ex);
+        }
+        releaseMediaPlayer();
+        releaseWakeLock();
+        sources.stop();
+        watch.removeWatcher(dispatcher);
+        dispatcher.removeWatcher(this);
+        Settings.detach(this, this);
+        closeRecorder();
+        if (journal != null)
+        {
+            try
+            {
+                journal.close();
+                journal = null;
+            }
+            catch (IOException ex)
+            {
+                Log.e(LogTitle, ex.getMessage(), ex);
+            }
+        }
+        if (stopping)
+        {
+            deleteFile(SnapshotFilename);
+            deleteFile(JournalFilename);
+            Log.d(LogTitle, "deleted "+SnapshotFilename+" and "+JournalFilename);
+        }
+        else
+        {
+            if (restoring)
+            {
+                Log.d(LogTitle, "destroyed while restoring, kept "+SnapshotFilename+" and "+JournalFilename);
+                super.onDestroy();
+                return;
+            }
+            try
+            {
+                snapshotCodec.write(snapshot, new File(getFilesDir(), SnapshotFilename));
+                deleteFile(JournalFilename);
+                Log.d(LogTitle, "wrote "+SnapshotFilename);
+            }
+            catch (IOException ex)
+            {
+                Log.e(LogTitle, ex.getMessage(), ex);
+            }
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Ingests raw fix. Called in engine thread.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy
+     * @param speed 
+     */
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        if (restoring)
+        {
+            restoreBuffer.offer(0, time, longitude, latitude, accuracy, speed);
+            return;
+        }
+        long start = System.nanoTime();
+        fixesReceived.increment();
+        if (recorder != null)
+        {
+            try
+            {
+                recorder.record(time, longitude, latitude, accuracy, speed);
+            }
+            catch (IOException ex)
+            {
+                Log.e(LogTitle, "track recording stopped: "+ex.getMessage(), ex);
+                closeRecorder();
+            }
+        }
+        switch (ingest.ingest(time, longitude, latitude, accuracy, speed))
+        {
+            case FixIngest.Accepted:
+                fixesAccepted.increment();
+                snapshot.fix(time, longitude, latitude, accuracy, speed);
+                if (journal != null)
+                {
+                    journal.fix(time, longitude, latitude, accuracy, speed);
+                }
+                break;
+            case FixIngest.Filtered:
+                fixesFiltered.increment();
+                break;
+            case FixIngest.Rejected:
+                fixesRejected.increment();
+                break;
+        }
+        long nanos = System.nanoTime() - start;
+        if (firstFixMillis < 0)
+        {
+            firstFixMillis = SystemClock.elapsedRealtime() - createMillis;
+            Log.d(LogTitle, "first fix evaluated "+firstFixMillis+" ms after start");
+        }
+        if (Looper.myLooper() == Looper.getMainLooper())
+        {
+            mainThreadFixNanos += nanos;
+        }
+        else
+        {
+            engineThreadFixNanos += nanos;
+        }
+        fixCount++;
+    }
+
+    @Setting(Simulate)
+    public void setSimulate(final boolean simulate)
+    {
+        Log.d(LogTitle, "setSimulate("+simulate+")");
+        runOnEngine(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                if (simulate != simulating && settingsApplied)
+                {
+                    runAfterRestore(reset);
+                }
+                simulating = simulate;
+                applySource();
+            }
+        });
+    }
+
+    @Setting(Source)
+    public void setLocationSource(final String name)
+    {
+        Log.d(LogTitle, "locationSource="+name);
+        runOnEngine(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                locationSource = name;
+                applySource();
+            }
+        });
+    }
+
+    @Setting(NmeaAddress)
+    public void setNmeaAddress(String address)
+    {
+        Log.d(LogTitle, "nmeaAddress="+address);
+        int idx = address.lastIndexOf(':');
+        final String host;
+        final int port;
+        try
+        {
+            host = idx != -1 ? address.substring(0, idx).trim() : "";
+            port = Integer.parseInt(address.substring(idx+1).trim());
+        }
+        catch (NumberFormatException ex)
+        {
+            Log.e(LogTitle, "bad NMEA address "+address, ex);
+            return;
+        }
+        runOnEngine(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                sources.put(new NmeaSource(clock, host, port, false));
+                sources.put(new NmeaSource(clock, host, port, true));
+            }
+        });
+    }
+    /**
+     * Selects simulator or preferred source. Switching between sources
+     * doesn't reset the watch. Called in engine thread. While applying
+     * settings, selection is deferred to the end of transaction.
+     */
+    private void applySource()
+    {
+        if (applyingSettings)
+        {
+            deferredSourceChanges++;
+            return;
+        }
+        String name = simulating ? SimulatorSource.Name : locationSource;
+        if (sources.getEntry(name) == null)
+        {
+            Log.d(LogTitle, name+" not available, using "+GpsSource.Name);
+            name = GpsSource.Name;
+        }
+        if (!name.equals(sources.getSelectedName()))
+        {
+            if (ReplaySource.Name.equals(name))
+            {
+                replaySource.setFile(latestTrack());
+            }
+            sources.select(name);
+            Log.d(LogTitle, "selected location source "+name);
+            ingest.startWatchdog();
+        }
+    }
+
+    private File trackDir()
+    {
+        File dir = getExternalFilesDir(null);
+        if (dir == null)
+        {
+            dir = getFilesDir();
+        }
+        return dir;
+    }
+    /**
+     * Returns latest track file that is not being recorded or null.
+     * @return 
+     */
+    private File latestTrack()
+    {
+        File latest = null;
+        File[] files = trackDir().listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                String name = file.getName();
+                if (name.startsWith("track-") && name.endsWith(".trk") && !file.equals(recordFile))
+                {
+                    if (latest == null || name.compareTo(latest.getName()) > 0)
+                    {
+                        latest = file;
+                    }
+                }
+            }
+        }
+        return latest;
+    }
+
+    private void runOnEngine(Runnable runnable)
+    {
+        if (Looper.myLooper() == engineThread.getLooper())
+        {
+            runnable.run();
+        }
+        else
+        {
+            engineHandler.post(runnable);
+        }
+    }
+    /**
+     * Runs task in engine thread and waits for it to complete.
+     * @param runnable 
+     */
+    private void runOnEngineAndWait(final Runnable runnable)
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        runOnEngine(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    runnable.run();
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            }
+        });
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final Runnable reset = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            resetWatch();
+        }
+    };
+
+    private void resetWatch()
+    {
+        engine.reset();
+        dispatcher.reset();
+        snapshot.clear();
+        if (journal != null)
+        {
+            journal.reset(clock.millis());
+        }
+    }
+
+    @Setting(RecordTrack)
+    public void setRecordTrack(final boolean record)
+    {
+        Log.d(LogTitle, "recordTrack="+record);
+        runOnEngine(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                closeRecorder();
+                if (record)
+                {
+                    File file = new File(trackDir(), "track-"+clock.millis()+".trk");
+                    try
+                    {
+                        recorder = new TrackRecorder(file);
+                        recordFile = file;
+                        Log.d(LogTitle, "recording to "+file);
+                    }
+                    catch (IOException ex)
+                    {
+                        Log.e(LogTitle, ex.getMessage(), ex);
+                    }
+                }
+            }
+        });
+    }
+    
+    private void closeRecorder()
+    {
+        if (recorder != null)
+        {
+            try
+            {
+                recorder.close();
+                Log.d(LogTitle, "recorded "+recorder.getCount()+" fixes");
+            }
+            catch (IOException ex)
+            {
+                Log.e(LogTitle, ex.getMessage(), ex);
+            }
+            recorder = null;
+            recordFile = null;
+        }
+    }
+
+    @Setting(Accuracy)
+    public void setMinAccuracy(int minAccuracy)
+    {
+        Log.d(LogTitle, "minAccuracy="+minAccuracy);
+        engine.setMinAccuracy(minAccuracy);
+    }
+    
+    @Setting(UnknownAccuracy)
+    public void setUnknownAccuracy(int unknownAccuracy)
+    {
+        Log.d(LogTitle, "unknownAccuracy="+unknownAccuracy);
+        engine.setUnknownAccuracy(unknownAccuracy);
+    }
+    
+    @Setting(AccuracyAlarmTime)
+    public void setAccuracyAlarmTime(int accuracyAlarmMinutes)
+    {
+        Log.d(LogTitle, "accuracyAlarmSeconds="+accuracyAlarmMinutes);
+        ingest.setAccuracyAlarmMillis(accuracyAlarmMinutes*60000L);
+    }
+    
+    @Setting(Mute)
+    public void setMuteTime(int muteMinutes)
+    {
+        Log.d(LogTitle, "muteTime="+muteMinutes);
+        ingest.setMuteMillis(60000L*muteMinutes);
+    }
+    
+    @Setting(AlarmTone)
+    public void setAlarmTone(String alarmTone)
+    {
+        Log.d(LogTitle, "AlarmTone="+alarmTone);
+        this.alarmTone = alarmTone;
+    }
+    
+    @Setting(DragSpeed)
+    public void setDragSpeed(int knots)
+    {
+        Log.d(LogTitle, "dragSpeed="+knots);
+        engine.setDragSpeed(knots*1852.0/3600.0);
+    }
+    
+    @Setting(GPSMaxSleep)
+    public void setGPSMaxSleep(int maxSleepSeconds)
+    {
+        Log.d(LogTitle, "maxSleep="+maxSleepSeconds);
+        engine.getSleepPolicy().setMaxSleepMillis(maxSleepSeconds*1000);
+    }
+    
+    @Override
+    public void alarm(double distance)
+    {
+        ingest.alarm(distance);
+    }
+
+    @Override
+    public void anchorAlarm(double distance)
+    {
+        alarms.increment();
+        startAlarm();
+        Intent alarmIntent = new Intent(this, BoatWatchActivity.class);
+        alarmIntent.setAction(AnchorAlarmAction);
+        alarmIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivity(alarmIntent);
+    }
+
+    @Override
+    public void accuracyAlarm()
+    {
+        startAlarm();
+        Intent alarmIntent = new Intent(this, BoatWatchActivity.class);
+        alarmIntent.setAction(AccuracyAlarmAction);
+        alarmIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        startActivity(alarmIntent);
+    }
+
+    @Override
+    public void location(double x, double y, long time, double accuracy, double speed)
+    {
+        if (engine.getSleepPolicy().location(x, y, time, accuracy))
+        {
+            requestGPSUpdates();
+        }
+    }
+
+    @Override
+    public void area(ConvexPolygon area)
+    {
+    }
+
+    @Override
+    public void outer(DenseMatrix64F path)
+    {
+    }
+
+    @Override
+    public void estimated(Circle estimated)
+    {
+    }
+
+    @Override
+    public void safeSector(SafeSector safe)
+    {
+        if (engine.getSleepPolicy().safeSector(safe))
+        {
+            requestGPSUpdates();
+        }
+    }
+
+    @Override
+    public void suggestNextUpdateIn(double seconds, double meters)
+    {
+        Log.d(LogTitle, "suggestNextUpdateIn("+seconds+", "+meters+")");
+        gpsMinDistance = meters;
+        if (engine.getSleepPolicy().suggest(seconds))
+        {
+            gpsReregistrations.increment();
+            requestGPSUpdates();
+        }
+    }
+
+    private void requestGPSUpdates()
+    {
+        if (applyingSettings)
+        {
+            deferredGPSUpdates++;
+            return;
+        }
+        gpsRegistrations.increment();
+        SleepPolicy sleepPolicy = engine.getSleepPolicy();
+        long sleep = sleepPolicy.getSleepMillis();
+        sleepInterval.set(sleep);
+        sources.setInterval(sleep, gpsMinDistance);
+        Log.d(LogTitle, "setInterval("+sleep+", "+gpsMinDistance+") fixes="+sleepPolicy.getFixes()+" expected="+sleepPolicy.getExpectedFixes());
+    }
+
+    /**
+     * Starts alarm sound and full wake lock. Media player and wake lock are
+     * used only in engine thread until it has quit.
+     */
+    private void startAlarm()
+    {
+        releaseMediaPlayer();
+        acquireWakeLock(PowerManager.FULL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP);
+        AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        int result = audioManager.requestAudioFocus(this, AudioManager.STREAM_ALARM, AudioManager.AUDIOFOCUS_GAIN);
+        if (result != AudioManager.AUDIOFOCUS_REQUEST_GRANTED) 
+        {
+            Log.e(LogTitle, "Could not gain audio focus "+result);
+        }            
+        if (alarmTone != null && !alarmTone.isEmpty())
+        {
+            try {
+                mediaPlayer = new MediaPlayer();
+                mediaPlayer.setAudioStreamType(AudioManager.STREAM_ALARM);
+                mediaPlayer.setDataSource(alarmTone);
+                mediaPlayer.prepare();
+                mediaPlayer.start();
+            }
+            catch (IOException | IllegalArgumentException | SecurityException | IllegalStateException ex) 
+            {
+                Log.e(LogTitle, ex.getMessage(), ex);
+            }
+        }
+        else
+        {
+            Log.e(LogTitle, "Could not start alarmtone="+alarmTone);
+        }
+    }
+
+    private void stopAlarm()
+    {
+        releaseMediaPlayer();
+        acquireWakeLock(PowerManager.PARTIAL_WAKE_LOCK);
+    }
+
+    private void releaseMediaPlayer()
+    {
+        if (mediaPlayer != null)
+        {
+            mediaPlayer.release();
+            mediaPlayer = null;
+        }
+    }
+
+    private void acquireWakeLock(int flags)
+    {
+        releaseWakeLock();
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = pm.newWakeLock(flags, LogTitle);
+        wakeLock.acquire();
+        wakeLockHeld.start();
+    }
+    
+    private void releaseWakeLock()
+    {
+        if (wakeLock != null)
+        {
+            wakeLock.release();
+            wakeLock = null;
+            wakeLockHeld.stop();
+        }
+    }
+
+    @Override
+    public void onAudioFocusChange(int focusChange)
+    {
+    }
+
+    private class Restorer implements TrackJournal.Replayer
+    {
+        private final boolean record;
+
+        public Restorer(boolean record)
+        {
+            this.record = record;
+        }
+
+        @Override
+        public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+        {
+            engine.replay(time, longitude, latitude, accuracy, speed);
+            if (record)
+            {
+                snapshot.fix(time, longitude, latitude, accuracy, speed);
+            }
+        }
+
+        @Override
+        public void anchorSet(long time)
+        {
+            watch.setAnchorLocation();
+            if (record)
+            {
+                snapshot.anchorSet();
+            }
+        }
+    }
+    
+    public class AnchorWatchBinder extends Binder
+    {
+        void addWatcher(Watcher watcher)
+        {
+            dispatcher.addWatcher(watcher);
+        }
+        void removeWatcher(Watcher watcher)
+        {
+            dispatcher.removeWatcher(watcher);
+        }
+        void stop()
+        {
+            stopping = true;
+            stopSelf();
+        }
+        void mute(final String action)
+        {
+            runOnEngine(new Runnable() 
+            {
+                @Override
+                public void run()
+                {
+                    stopAlarm();
+                    switch (action)
+                    {
+                        case AnchorAlarmAction:
+                        {
+                            ingest.muteAnchorAlarm();
+                        }
+                            break;
+                        case AccuracyAlarmAction:
+                        {
+                            ingest.muteAccuracyAlarm();
+                        }
+                            break;
+                    }
+                }
+            });
+        }
+        
+        void setAnchorLocation()
+        {
+            runOnEngine(new Runnable() 
+            {
+                @Override
+                public void run()
+                {
+                    runAfterRestore(setAnchor);
+                }
+            });
+        }
+        
+        private final Runnable setAnchor = new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                if (watch.setAnchorLocation())
+                {
+                    snapshot.anchorSet();
+                    if (journal != null)
+                    {
+                        journal.anchorSet(clock.millis());
+                    }
+                }
+            }
+        };
+        /**
+         * Returns location sources for per source fix rate and latency.
+         * @return 
+         */
+        LocationSourceManager getLocationSources()
+        {
+            return sources;
+        }
+        /**
+         * Returns number of fixes rejected by outlier filter.
+         * @return 
+         */
+        long getFilteredCount()
+        {
+            return engine.getFiltered();
+        }
+        /**
+         * Returns number of location update registrations.
+         * @return 
+         */
+        long getGPSRegistrations()
+        {
+            return gpsRegistrations.get();
+        }
+        /**
+         * Returns number of location update registrations avoided by
+         * combining them in settings transactions.
+         * @return 
+         */
+        long getAvoidedRegistrations()
+        {
+            return avoidedRegistrations.get();
+        }
+        /**
+         * Returns number of location source selections avoided by combining
+         * them in settings transactions.
+         * @return 
+         */
+        long getAvoidedSelections()
+        {
+            return avoidedSelections.get();
+        }
+        /**
+         * Returns number of applied settings transactions.
+         * @return 
+         */
+        long getSettingsTransactions()
+        {
+            return settingsTransaction.getTransactions();
+        }
+        /**
+         * Returns milliseconds from onCreate to first evaluated fix or -1.
+         * @return 
+         */
+        long getFirstFixMillis()
+        {
+            return firstFixMillis;
+        }
+        /**
+         * Returns milliseconds from onCreate to completed restore or -1.
+         * @return 
+         */
+        long getRestoreMillis()
+        {
+            return restoreMillis;
+        }
+        /**
+         * Returns executor that runs tasks in engine thread.
+         * @return 
+         */
+        Executor getEngineExecutor()
+        {
+            return engineExecutor;
+        }
+        /**
+         * Returns service metrics.
+         * @return 
+         */
+        Metrics getMetrics()
+        {
+            return metrics;
+        }
+        /**
+         * Returns service metrics as plain text.
+         * @return 
+         */
+        String dumpMetrics()
+        {
+            return metrics.dump();
+        }
+        /**
+         * Returns timer for AnchorView draw time.
+         * @return 
+         */
+        Metrics.Timer getDrawTimer()
+        {
+            return drawTime;
+        }
+        /**
+         * Returns number of fixes handled in fix.
+         * @return 
+         */
+        long getFixCount()
+        {
+            return fixCount;
+        }
+        /**
+         * Returns total nanoseconds main thread has spent handling fixes.
+         * @return 
+         */
+        long getMainThreadFixNanos()
+        {
+            return mainThreadFixNanos;
+        }
+        /**
+         * Returns total nanoseconds engine thread has spent handling fixes.
+         * @return 
+         */
+        long getEngineThreadFixNanos()
+        {
+            return engineThreadFixNanos;
+        }
+    }
+}
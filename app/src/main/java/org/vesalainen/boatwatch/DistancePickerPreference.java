@@ -21,6 +21,8 @@ import android.content.Context;
 import android.util.AttributeSet;
 import android.view.View;
 import static org.vesalainen.boatwatch.Settings.DistanceUnit;
+import org.vesalainen.boatwatch.engine.SettingBinder;
+import org.vesalainen.boatwatch.engine.SettingsSnapshot;
 import org.vesalainen.util.AbstractProvisioner.Setting;
 import org.vesalainen.util.navi.Feet;
 
@@ -30,6 +32,17 @@ import org.vesalainen.util.navi.Feet;
  */
 public class DistancePickerPreference extends NumberPickerPreference
 {
+    /**
+     * Binder of @Setting methods.
+     */
+    static final SettingBinder<DistancePickerPreference> SettingsBinder = new SettingBinder<DistancePickerPreference>(DistanceUnit)
+    {
+        @Override
+        public void bind(DistancePickerPreference preference, String key, SettingsSnapshot settings)
+        {
+            preference.setDistanceUnit(settings.getString(key, "m"));
+        }
+    };
     private String distanceUnit;
     private final String unitMeters;
     private final String unitFeet;
@@ -94,7 +107,7 @@ public class DistancePickerPreference extends NumberPickerPreference
     @Override
     protected void onBindDialogView(View view)
     {
-        Settings.attach(getContext(), this);
+        Settings.attach(getContext(), this, SettingsBinder);
         super.onBindDialogView(view);
     }
     
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+import android.util.Log;
+import static org.vesalainen.boatwatch.BoatWatchConstants.*;
+import org.vesalainen.boatwatch.engine.FixSink;
+import org.vesalainen.boatwatch.engine.LocationSource;
+
+/**
+ * Phone GPS as location source. Fixes are delivered in given looper.
+ *
+ * @author Timo Vesalainen
+ */
+public class GpsSource implements LocationSource, LocationListener
+{
+    public static final String Name = "gps";
+    private final LocationManager locationManager;
+    private final Looper looper;
+    private FixSink sink;
+    private long intervalMillis;
+    private float minDistance = 1;
+
+    public GpsSource(Context context, Looper looper)
+    {
+        this.locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.looper = looper;
+    }
+
+    @Override
+    public String getName()
+    {
+        return Name;
+    }
+
+    @Override
+    public boolean isRealTime()
+    {
+        return true;
+    }
+
+    @Override
+    public void start(FixSink sink)
+    {
+        this.sink = sink;
+        request();
+    }
+
+    @Override
+    public void stop()
+    {
+        locationManager.removeUpdates(this);
+        sink = null;
+    }
+
+    @Override
+    public void setInterval(long millis, double minDistance)
+    {
+        if (millis != intervalMillis || (float)minDistance != this.minDistance)
+        {
+            this.intervalMillis = millis;
+            this.minDistance = (float) minDistance;
+            if (sink != null)
+            {
+                locationManager.removeUpdates(this);
+                request();
+            }
+        }
+    }
+
+    private void request()
+    {
+        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, intervalMillis, minDistance, this, looper);
+        Log.d(LogTitle, "requestLocationUpdates("+intervalMillis+", "+minDistance+")");
+    }
+
+    @Override
+    public void onLocationChanged(Location location)
+    {
+        Log.d(LogTitle, location.toString());
+        FixSink s = sink;
+        if (s != null)
+        {
+            s.fix(
+                    location.getTime(), 
+                    location.getLongitude(), 
+                    location.getLatitude(), 
+                    location.hasAccuracy() ? location.getAccuracy() : Double.NaN, 
+                    location.hasSpeed() ? location.getSpeed() : Double.NaN
+            );
+        }
+    }
+
+    @Override
+    public void onStatusChanged(String provider, int status, Bundle extras)
+    {
+    }
+
+    @Override
+    public void onProviderEnabled(String provider)
+    {
+    }
+
+    @Override
+    public void onProviderDisabled(String provider)
+    {
+    }
+
+}
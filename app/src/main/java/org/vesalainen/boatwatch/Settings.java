@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2014 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import org.vesalainen.boatwatch.engine.SettingBinder;
+import org.vesalainen.boatwatch.engine.SettingsSnapshot;
+
+/**
+ * Provisions @Setting methods from shared preferences.
+ *
+ * <p>Preferences are read to SettingsSnapshot once when provisioner is
+ * created. Lookups read the snapshot. Change listener reads only the
+ * changed key, replaces the snapshot and notifies only if value really
+ * changed.
+ *
+ * <p>Attached objects come with a SettingBinder which calls their @Setting
+ * methods directly. Attach, detach and dispatch don't use reflection.
+ *
+ * @author Timo Vesalainen
+ */
+public class Settings
+{
+    public static final String DistanceUnit = "pref_distance_unit";
+    public static final String Simulate = "pref_simulate";
+    public static final String AlarmTone = "pref_alarmtone";
+    public static final String Mute = "pref_mute_time";
+    public static final String Accuracy = "pref_accuracy";
+    public static final String UnknownAccuracy = "pref_unknown_accuracy";
+    public static final String AccuracyAlarmTime = "pref_accuracy_alarm_time";
+    public static final String GPSMaxSleep = "pref_gps_max_sleep_time";
+    public static final String DragSpeed = "pref_drag_speed";
+    public static final String RecordTrack = "pref_record_track";
+    public static final String Source = "pref_location_source";
+    public static final String NmeaAddress = "pref_nmea_address";
+    
+    public static Provisioner provisioner;
+    private static long attachCount;
+    private static long attachNanos;
+    
+    /**
+     * Attaches object and calls its setters with current settings.
+     * @param <T>
+     * @param context
+     * @param ob
+     * @param binder Binder of ob's @Setting methods
+     */
+    public static <T> void attach(Context context, T ob, SettingBinder<? super T> binder)
+    {
+        long start = System.nanoTime();
+        if (provisioner == null)
+        {
+            provisioner = new Provisioner(context);
+            SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+            sharedPreferences.registerOnSharedPreferenceChangeListener(provisioner);
+        }
+        provisioner.attach(ob, binder);
+        long nanos = System.nanoTime() - start;
+        attachCount++;
+        attachNanos += nanos;
+        Log.d("Settings", "attach "+ob.getClass().getSimpleName()+" "+nanos/1000+" us");
+    }
+    /**
+     * Returns current settings or empty snapshot if nothing is attached.
+     * @return 
+     */
+    public static SettingsSnapshot getSnapshot()
+    {
+        Provisioner p = provisioner;
+        return p != null ? p.snapshot : SettingsSnapshot.empty();
+    }
+    /**
+     * Returns number of attach calls.
+     * @return 
+     */
+    public static long getAttachCount()
+    {
+        return attachCount;
+    }
+    /**
+     * Returns total nanoseconds spent in attach calls.
+     * @return 
+     */
+    public static long getAttachNanos()
+    {
+        return attachNanos;
+    }
+    public static void detach(Context context, Object ob)
+    {
+        if (provisioner != null)
+        {
+            provisioner.detach(ob);
+            if (provisioner.isEmpty())
+            {
+                SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+                sharedPreferences.unregisterOnSharedPreferenceChangeListener(provisioner);
+                provisioner = null;
+            }
+        }
+    }
+    private static class Provisioner implements OnSharedPreferenceChangeListener
+    {
+        private volatile SettingsSnapshot snapshot;
+        private final List<String> changed = new ArrayList<>();
+        private final List<Attached> attached = new ArrayList<>();
+
+        public Provisioner(Context context)
+        {
+            SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+            snapshot = SettingsSnapshot.of(sharedPreferences.getAll());
+        }
+        
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
+        {
+            if (key == null)
+            {
+                changed.clear();
+                snapshot = snapshot.update(sharedPreferences.getAll(), changed);
+                for (String k : changed)
+                {
+                    setValue(k, snapshot.get(k));
+                }
+                Log.d("Settings", "onSharedPreferenceChanged "+changed);
+                return;
+            }
+            Object value = read(sharedPreferences, key);
+            SettingsSnapshot next = snapshot.with(key, value);
+            if (next != snapshot)
+            {
+                snapshot = next;
+                setValue(key, value);
+                Log.d("Settings", "onSharedPreferenceChanged "+key+"="+value);
+            }
+        }
+        /**
+         * Reads single value with the getter matching previous value type.
+         * Whole map is read only for new keys and type changes.
+         */
+        private Object read(SharedPreferences sharedPreferences, String key)
+        {
+            if (!sharedPreferences.contains(key))
+            {
+                return null;
+            }
+            Object old = snapshot.get(key);
+            try
+            {
+                if (old instanceof String)
+                {
+                    return sharedPreferences.getString(key, null);
+                }
+                if (old instanceof Boolean)
+                {
+                    return sharedPreferences.getBoolean(key, false);
+                }
+                if (old instanceof Integer)
+                {
+                    return sharedPreferences.getInt(key, 0);
+                }
+                if (old instanceof Long)
+                {
+                    return sharedPreferences.getLong(key, 0);
+                }
+                if (old instanceof Float)
+                {
+                    return sharedPreferences.getFloat(key, 0);
+                }
+            }
+            catch (ClassCastException ex)
+            {
+            }
+            return sharedPreferences.getAll().get(key);
+        }
+        
+        private <T> void attach(T ob, SettingBinder<? super T> binder)
+        {
+            attached.add(new Attached(ob, binder));
+            binder.bindAll(ob, snapshot);
+        }
+
+        private void detach(Object ob)
+        {
+            for (int ii=0;ii<attached.size();ii++)
+            {
+                if (attached.get(ii).target == ob)
+                {
+                    attached.remove(ii);
+                    return;
+                }
+            }
+        }
+
+        private boolean isEmpty()
+        {
+            return attached.isEmpty();
+        }
+
+        private void setValue(String key, Object value)
+        {
+            if (value == null)
+            {
+                return;
+            }
+            SettingsSnapshot settings = snapshot;
+            for (int ii=0;ii<attached.size();ii++)
+            {
+                Attached a = attached.get(ii);
+                if (a.binder.handles(key))
+                {
+                    a.binder.bind(a.target, key, settings);
+                }
+            }
+        }
+        
+    }
+    private static class Attached
+    {
+        private final Object target;
+        private final SettingBinder<Object> binder;
+
+        @SuppressWarnings("unchecked")
+        private <T> Attached(T target, SettingBinder<? super T> binder)
+        {
+            this.target = target;
+            this.binder = (SettingBinder<Object>) binder;
+        }
+        
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import org.vesalainen.boatwatch.engine.SettingBinder;
+import org.vesalainen.util.AbstractProvisioner.Setting;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Checks that binders cover exactly the @Setting methods of their class, so
+ * that adding a @Setting method without binder case is caught.
+ *
+ * @author Timo Vesalainen
+ */
+public class SettingBindersTest
+{
+    @Test
+    public void testAnchorWatchService()
+    {
+        check(AnchorWatchService.class, AnchorWatchService.SettingsBinder);
+        check(AnchorWatchService.class, AnchorWatchService.TransactionBinder);
+    }
+
+    @Test
+    public void testAnchorWatchFragment()
+    {
+        check(AnchorWatchFragment.class, AnchorWatchFragment.SettingsBinder);
+    }
+
+    @Test
+    public void testDistancePickerPreference()
+    {
+        check(DistancePickerPreference.class, DistancePickerPreference.SettingsBinder);
+    }
+
+    private static void check(Class<?> cls, SettingBinder<?> binder)
+    {
+        Set<String> settings = new TreeSet<>();
+        for (Method method : cls.getDeclaredMethods())
+        {
+            Setting setting = method.getAnnotation(Setting.class);
+            if (setting != null)
+            {
+                assertTrue(cls.getSimpleName()+"."+method.getName()+" "+setting.value()+" not bound", binder.handles(setting.value()));
+                settings.add(setting.value());
+            }
+        }
+        assertFalse(cls.getSimpleName()+" has no @Setting methods", settings.isEmpty());
+        assertEquals(cls.getSimpleName(), settings, new TreeSet<>(Arrays.asList(binder.getKeys())));
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import org.vesalainen.navi.AnchorWatch;
+
+/**
+ * Fix processing pipeline without Android dependencies.
+ *
+ * <p>Fixes are passed as primitives. Missing accuracy or speed is passed as
+ * NaN. Fixes pass accuracy gate only if accuracy is at most minAccuracy.
+ * Accuracy of fixes without accuracy is unknown. They are counted and
+ * gated with unknownAccuracy, by default 10 m. RMC and GLL only NMEA
+ * sources and some Android providers give no accuracy. Fixes passing accuracy gate are then tested by filter,
+ * HampelFilter by default.
+ *
+ * <p>Filter never rejects a fix that can be outside safe sector, that is
+ * farther from last accepted fix than sleep policy margin. Such fixes are
+ * passed and counted as bypassed.
+ *
+ * @author Timo Vesalainen
+ */
+public class AnchorWatchEngine
+{
+    private static final double DegreeMeters = 60*1852;
+    public static final double DefaultUnknownAccuracy = 10;
+    private final AnchorWatch watch;
+    private final SleepPolicy sleepPolicy = new SleepPolicy();
+    private FixFilter filter = new HampelFilter();
+    private double minAccuracy;
+    private double unknownAccuracy = DefaultUnknownAccuracy;
+    private long received;
+    private long unknown;
+    private long accepted;
+    private long rejected;
+    private long filtered;
+    private long bypassed;
+    private boolean hasLast;
+    private double lastLongitude;
+    private double lastLatitude;
+
+    public AnchorWatchEngine(AnchorWatch watch)
+    {
+        this.watch = watch;
+    }
+    /**
+     * Updates watch with fix if it passes accuracy gate and filter.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy Accuracy in meters or NaN
+     * @param speed Speed in m/s or NaN
+     * @return true if fix was accepted. Accuracy watchdog should be restarted.
+     */
+    public boolean update(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        received++;
+        double gated = accuracy;
+        if (Double.isNaN(accuracy))
+        {
+            unknown++;
+            gated = unknownAccuracy;
+        }
+        if (!(gated <= minAccuracy))
+        {
+            rejected++;
+            return false;
+        }
+        if (filter != null && !filter.accept(time, longitude, latitude, accuracy, speed))
+        {
+            if (canBeOutside(longitude, latitude))
+            {
+                bypassed++;
+            }
+            else
+            {
+                rejected++;
+                filtered++;
+                return false;
+            }
+        }
+        hasLast = true;
+        lastLongitude = longitude;
+        lastLatitude = latitude;
+        replay(time, longitude, latitude, accuracy, speed);
+        accepted++;
+        return true;
+    }
+    /**
+     * Returns true if fix is not known to be inside safe sector.
+     */
+    private boolean canBeOutside(double longitude, double latitude)
+    {
+        double margin = sleepPolicy.getMargin();
+        if (Double.isInfinite(margin))
+        {
+            return false;
+        }
+        if (!hasLast)
+        {
+            return true;
+        }
+        double dx = (longitude - lastLongitude)*DegreeMeters*Math.cos(Math.toRadians(latitude));
+        double dy = (latitude - lastLatitude)*DegreeMeters;
+        return Math.hypot(dx, dy) >= margin;
+    }
+    /**
+     * Updates watch with previously accepted fix without accuracy gate.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy Accuracy in meters or NaN
+     * @param speed Speed in m/s or NaN
+     */
+    public void replay(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        if (Double.isNaN(accuracy))
+        {
+            watch.update(longitude, latitude, time);
+        }
+        else
+        {
+            if (Double.isNaN(speed))
+            {
+                watch.update(longitude, latitude, time, accuracy);
+            }
+            else
+            {
+                watch.update(longitude, latitude, time, accuracy, speed);
+            }
+        }
+    }
+
+    /**
+     * Resets watch, sleep policy and filter.
+     */
+    public void reset()
+    {
+        hasLast = false;
+        watch.reset();
+        sleepPolicy.reset();
+        if (filter != null)
+        {
+            filter.reset();
+        }
+    }
+
+    public AnchorWatch getWatch()
+    {
+        return watch;
+    }
+
+    public SleepPolicy getSleepPolicy()
+    {
+        return sleepPolicy;
+    }
+
+    public void setMinAccuracy(double minAccuracy)
+    {
+        this.minAccuracy = minAccuracy;
+    }
+
+    public double getMinAccuracy()
+    {
+        return minAccuracy;
+    }
+    /**
+     * Sets accuracy assumed in accuracy gate for fixes without accuracy.
+     * @param unknownAccuracy Accuracy in meters or NaN to reject fixes
+     * without accuracy.
+     */
+    public void setUnknownAccuracy(double unknownAccuracy)
+    {
+        this.unknownAccuracy = unknownAccuracy;
+    }
+
+    public double getUnknownAccuracy()
+    {
+        return unknownAccuracy;
+    }
+
+    public long getReceived()
+    {
+        return received;
+    }
+
+    public long getAccepted()
+    {
+        return accepted;
+    }
+
+    public long getRejected()
+    {
+        return rejected;
+    }
+    /**
+     * Returns number of fixes without accuracy. These are included in
+     * rejected unless unknownAccuracy passes accuracy gate.
+     * @return 
+     */
+    public long getUnknown()
+    {
+        return unknown;
+    }
+    /**
+     * Returns number of fixes rejected by filter. These are included in
+     * rejected.
+     * @return 
+     */
+    public long getFiltered()
+    {
+        return filtered;
+    }
+    /**
+     * Returns number of fixes filter rejected but which were accepted
+     * because they can be outside safe sector. These are included in
+     * accepted.
+     * @return 
+     */
+    public long getBypassed()
+    {
+        return bypassed;
+    }
+    /**
+     * Sets worst-case drag speed to sleep policy and filter.
+     * @param dragSpeed Speed in m/s
+     */
+    public void setDragSpeed(double dragSpeed)
+    {
+        sleepPolicy.setDragSpeed(dragSpeed);
+        if (filter != null)
+        {
+            filter.setDragSpeed(dragSpeed);
+        }
+    }
+    /**
+     * Sets filter.
+     * @param filter Filter or null for no filtering
+     */
+    public void setFilter(FixFilter filter)
+    {
+        this.filter = filter;
+        if (filter != null)
+        {
+            filter.setDragSpeed(sleepPolicy.getDragSpeed());
+        }
+    }
+
+    public FixFilter getFilter()
+    {
+        return filter;
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scheduler for a fixed set of reusable deadlines.
+ *
+ * <p>Unlike java.util.Timer, re-arming a deadline doesn't create or queue
+ * anything. Arming writes the deadline time. Scheduler thread is woken only
+ * if the new deadline is earlier than the one it is waiting for.
+ *
+ * <p>Actions are run in scheduler thread. When clock is VirtualClock, thread
+ * is not started and deadlines are run by VirtualClock.advanceTo.
+ *
+ * @author Timo Vesalainen
+ */
+public class DeadlineScheduler implements Runnable
+{
+    private static final long Never = Long.MAX_VALUE;
+    private final Clock clock;
+    private final String name;
+    private Deadline[] deadlines = new Deadline[4];
+    private int count;
+    private volatile long waitingUntil = Long.MIN_VALUE;
+    private volatile boolean running;
+    private Thread thread;
+
+    public DeadlineScheduler(Clock clock, String name)
+    {
+        this.clock = clock;
+        this.name = name;
+    }
+    /**
+     * Creates new deadline. Deadlines should be created at setup time.
+     * @param action Action run when deadline expires.
+     * @return
+     */
+    public synchronized Deadline create(Runnable action)
+    {
+        if (count == deadlines.length)
+        {
+            deadlines = Arrays.copyOf(deadlines, 2*count);
+        }
+        Deadline deadline = new Deadline(action);
+        deadlines[count++] = deadline;
+        return deadline;
+    }
+    /**
+     * Starts scheduler thread.
+     */
+    public synchronized void start()
+    {
+        if (thread == null)
+        {
+            running = true;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+    /**
+     * Stops scheduler thread. Armed deadlines are not run.
+     */
+    public synchronized void stop()
+    {
+        running = false;
+        notifyAll();
+        thread = null;
+    }
+
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            runDue(now());
+            synchronized (this)
+            {
+                waitingUntil = Never;
+                long next = nextDeadline();
+                waitingUntil = next;
+                long now = now();
+                try
+                {
+                    if (running && next > now)
+                    {
+                        if (next == Never)
+                        {
+                            wait();
+                        }
+                        else
+                        {
+                            wait(next - now);
+                        }
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    running = false;
+                }
+                waitingUntil = Long.MIN_VALUE;
+            }
+        }
+    }
+    /**
+     * Runs all deadlines that are due at given time.
+     * @param now
+     * @return Next deadline time or Long.MAX_VALUE if none is armed.
+     */
+    public long runDue(long now)
+    {
+        Deadline[] arr = deadlines;
+        int cnt = Math.min(count, arr.length);
+        for (int ii=0;ii<cnt;ii++)
+        {
+            arr[ii].runIfDue(now);
+        }
+        return nextDeadline();
+    }
+    /**
+     * Returns earliest armed deadline time or Long.MAX_VALUE if none is armed.
+     * @return
+     */
+    public long nextDeadline()
+    {
+        Deadline[] arr = deadlines;
+        int cnt = Math.min(count, arr.length);
+        long next = Never;
+        for (int ii=0;ii<cnt;ii++)
+        {
+            next = Math.min(next, arr[ii].at.get());
+        }
+        return next;
+    }
+
+    private long now()
+    {
+        return clock.millis();
+    }
+
+    public Clock getClock()
+    {
+        return clock;
+    }
+    /**
+     * Returns number of created deadlines.
+     * @return 
+     */
+    public synchronized int getCount()
+    {
+        return count;
+    }
+
+    private void wakeup(long at)
+    {
+        if (at < waitingUntil)
+        {
+            synchronized (this)
+            {
+                notifyAll();
+            }
+        }
+    }
+
+    public class Deadline
+    {
+        private final Runnable action;
+        private final AtomicLong at = new AtomicLong(Never);
+        private volatile boolean fired;
+
+        private Deadline(Runnable action)
+        {
+            this.action = action;
+        }
+        /**
+         * Arms deadline to expire after delay. Earlier arming is overridden.
+         * @param delayMillis
+         */
+        public void arm(long delayMillis)
+        {
+            long t = now() + delayMillis;
+            fired = false;
+            at.set(t);
+            wakeup(t);
+        }
+        /**
+         * Disarms deadline and clears fired state.
+         */
+        public void cancel()
+        {
+            at.set(Never);
+            fired = false;
+        }
+        /**
+         * Returns true if deadline is armed or it has fired after it was
+         * armed and not cancelled after that.
+         * @return
+         */
+        public boolean isActive()
+        {
+            return fired || at.get() != Never;
+        }
+
+        public boolean isArmed()
+        {
+            return at.get() != Never;
+        }
+
+        private void runIfDue(long now)
+        {
+            long t = at.get();
+            if (t <= now && at.compareAndSet(t, Never))
+            {
+                fired = true;
+                action.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Random;
+import org.vesalainen.math.Circle;
+
+/**
+ * Minimum enclosing circle of a bounded history of points, maintained one
+ * point at a time.
+ *
+ * <p>Point inside circle is accepted in O(1). Point outside circle is on
+ * the boundary of the new circle, which is found by Welzl's algorithm with
+ * that point fixed. When history is full, oldest point is evicted. Circle
+ * is determined by the points on its boundary, so it is rebuilt only when
+ * an evicted point is on the boundary. For points from a stationary
+ * distribution both happen with probability of about 3/n per point, which
+ * makes the amortized cost O(1) per point.
+ *
+ * @author Timo Vesalainen
+ */
+public class EnclosingCircle implements Circle
+{
+    private static final double Eps = 1e-9;
+    private final int capacity;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] order;
+    private final Random random = new Random(1);
+    private long added;
+    private int size;
+    private double x;
+    private double y;
+    private double r2;
+    private double radius;
+    private long expansions;
+    private long rebuilds;
+
+    public EnclosingCircle(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("capacity "+capacity+" < 1");
+        }
+        this.capacity = capacity;
+        this.xs = new double[capacity];
+        this.ys = new double[capacity];
+        this.order = new int[capacity];
+    }
+    /**
+     * Adds point to history. If history is full, oldest point is evicted.
+     * @param px
+     * @param py
+     * @return true if circle changed.
+     */
+    public boolean add(double px, double py)
+    {
+        boolean evicted = false;
+        if (size == capacity)
+        {
+            int old = (int) ((added - size) % capacity);
+            evicted = !inside(xs[old], ys[old], 1-Eps);
+            size--;
+        }
+        int index = (int) (added % capacity);
+        added++;
+        xs[index] = px;
+        ys[index] = py;
+        size++;
+        if (evicted)
+        {
+            rebuild();
+            return true;
+        }
+        if (size == 1)
+        {
+            set(px, py);
+            return true;
+        }
+        if (inside(px, py, 1+Eps))
+        {
+            return false;
+        }
+        expand(index);
+        expansions++;
+        return true;
+    }
+    /**
+     * Recomputes circle from all points in history.
+     */
+    public void rebuild()
+    {
+        rebuilds++;
+        int n = shuffle(-1);
+        if (n == 0)
+        {
+            x = y = r2 = radius = 0;
+            return;
+        }
+        set(xs[order[0]], ys[order[0]]);
+        for (int ii=1;ii<n;ii++)
+        {
+            int i = order[ii];
+            if (!inside(xs[i], ys[i], 1+Eps))
+            {
+                set(xs[i], ys[i]);
+                for (int jj=0;jj<ii;jj++)
+                {
+                    int j = order[jj];
+                    if (!inside(xs[j], ys[j], 1+Eps))
+                    {
+                        set(i, j);
+                        for (int kk=0;kk<jj;kk++)
+                        {
+                            int k = order[kk];
+                            if (!inside(xs[k], ys[k], 1+Eps))
+                            {
+                                set(i, j, k);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * Forgets all points.
+     */
+    public void reset()
+    {
+        added = 0;
+        size = 0;
+        x = y = r2 = radius = 0;
+    }
+    /**
+     * Finds circle of history with point p on boundary.
+     */
+    private void expand(int p)
+    {
+        int n = shuffle(p);
+        set(xs[p], ys[p]);
+        for (int ii=0;ii<n;ii++)
+        {
+            int i = order[ii];
+            if (!inside(xs[i], ys[i], 1+Eps))
+            {
+                set(p, i);
+                for (int jj=0;jj<ii;jj++)
+                {
+                    int j = order[jj];
+                    if (!inside(xs[j], ys[j], 1+Eps))
+                    {
+                        set(p, i, j);
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * Fills order with history indexes in random order.
+     * @param skip Index left out or -1
+     * @return Number of indexes
+     */
+    private int shuffle(int skip)
+    {
+        int n = 0;
+        for (long s=added-size;s<added;s++)
+        {
+            int index = (int) (s % capacity);
+            if (index != skip)
+            {
+                order[n++] = index;
+            }
+        }
+        for (int ii=n-1;ii>0;ii--)
+        {
+            int jj = random.nextInt(ii+1);
+            int t = order[ii];
+            order[ii] = order[jj];
+            order[jj] = t;
+        }
+        return n;
+    }
+
+    private boolean inside(double px, double py, double scale)
+    {
+        double dx = px - x;
+        double dy = py - y;
+        return dx*dx + dy*dy <= r2*scale;
+    }
+
+    private void set(double px, double py)
+    {
+        x = px;
+        y = py;
+        r2 = 0;
+        radius = 0;
+    }
+
+    private void set(int i, int j)
+    {
+        x = (xs[i] + xs[j])/2;
+        y = (ys[i] + ys[j])/2;
+        double dx = xs[i] - x;
+        double dy = ys[i] - y;
+        r2 = dx*dx + dy*dy;
+        radius = Math.sqrt(r2);
+    }
+    /**
+     * Sets circumcircle of three points. Collinear points get the circle of
+     * the farthest pair.
+     */
+    private void set(int i, int j, int k)
+    {
+        double bx = xs[j] - xs[i];
+        double by = ys[j] - ys[i];
+        double cx = xs[k] - xs[i];
+        double cy = ys[k] - ys[i];
+        double d = 2*(bx*cy - by*cx);
+        double b2 = bx*bx + by*by;
+        double c2 = cx*cx + cy*cy;
+        if (Math.abs(d) <= Eps*(b2 + c2))
+        {
+            double dx = xs[k] - xs[j];
+            double dy = ys[k] - ys[j];
+            double a2 = dx*dx + dy*dy;
+            if (a2 >= b2 && a2 >= c2)
+            {
+                set(j, k);
+            }
+            else
+            {
+                if (b2 >= c2)
+                {
+                    set(i, j);
+                }
+                else
+                {
+                    set(i, k);
+                }
+            }
+            return;
+        }
+        double ux = (cy*b2 - by*c2)/d;
+        double uy = (bx*c2 - cx*b2)/d;
+        x = xs[i] + ux;
+        y = ys[i] + uy;
+        r2 = ux*ux + uy*uy;
+        radius = Math.sqrt(r2);
+    }
+
+    @Override
+    public double getX()
+    {
+        return x;
+    }
+
+    @Override
+    public double getY()
+    {
+        return y;
+    }
+
+    @Override
+    public double getRadius()
+    {
+        return radius;
+    }
+    /**
+     * Returns number of points in history.
+     * @return 
+     */
+    public int getCount()
+    {
+        return size;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+    /**
+     * Returns number of times circle grew to include new point.
+     * @return 
+     */
+    public long getExpansions()
+    {
+        return expansions;
+    }
+    /**
+     * Returns number of full rebuilds.
+     * @return 
+     */
+    public long getRebuilds()
+    {
+        return rebuilds;
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * Streaming filter stage between accuracy gate and AnchorWatch.
+ *
+ * @author Timo Vesalainen
+ * @see HampelFilter
+ */
+public interface FixFilter
+{
+    /**
+     * Tests fix. Implementation should use constant memory and constant
+     * work per fix.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy Accuracy in meters or NaN
+     * @param speed Speed in m/s or NaN
+     * @return true if fix is passed to watch.
+     */
+    boolean accept(long time, double longitude, double latitude, double accuracy, double speed);
+    /**
+     * Forgets history.
+     */
+    void reset();
+    /**
+     * Sets worst-case drag speed. Movement possible at drag speed is not
+     * rejected.
+     * @param dragSpeed Speed in m/s
+     */
+    void setDragSpeed(double dragSpeed);
+}
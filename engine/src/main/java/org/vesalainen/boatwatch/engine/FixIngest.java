@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.concurrent.Executor;
+import org.vesalainen.boatwatch.engine.DeadlineScheduler.Deadline;
+
+/**
+ * Feeds fixes to AnchorWatchEngine and runs accuracy watchdog and anchor
+ * alarm mute. AnchorWatchService and simulations use this so that they
+ * cannot disagree about when an alarm goes off.
+ *
+ * <p>Accepted and filtered fixes restart the watchdog. Filtered fixes are
+ * accurate, only unlikely. Rejected fixes start the watchdog only if it is
+ * not already running, so that a GPS with bad accuracy or a GPS that goes
+ * silent both alarm after accuracy alarm time.
+ *
+ * <p>All methods are called in one thread. Deadline actions are passed to
+ * executor which should run them in that same thread.
+ *
+ * @author Timo Vesalainen
+ */
+public class FixIngest implements FixSink
+{
+    public static final int Accepted = 0;
+    public static final int Filtered = 1;
+    public static final int Rejected = 2;
+    private final AnchorWatchEngine engine;
+    private final Listener listener;
+    private final Deadline watchdog;
+    private final Deadline resume;
+    private long accuracyAlarmMillis = 300000;
+    private long muteMillis = 600000;
+    private boolean muted;
+    private long anchorAlarms;
+    private long accuracyAlarms;
+    private long resumes;
+    private final Runnable accuracyAlarm = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            accuracyAlarms++;
+            listener.accuracyAlarm();
+        }
+    };
+    private final Runnable unmute = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            muted = false;
+            resumes++;
+        }
+    };
+    /**
+     * Creates FixIngest. Deadlines are created in scheduler.
+     * @param engine
+     * @param scheduler
+     * @param executor Runs deadline actions in fix thread.
+     * @param listener 
+     */
+    public FixIngest(AnchorWatchEngine engine, DeadlineScheduler scheduler, final Executor executor, Listener listener)
+    {
+        this.engine = engine;
+        this.listener = listener;
+        this.watchdog = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                executor.execute(accuracyAlarm);
+            }
+        });
+        this.resume = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                executor.execute(unmute);
+            }
+        });
+    }
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        ingest(time, longitude, latitude, accuracy, speed);
+    }
+    /**
+     * Updates engine with fix and restarts or starts accuracy watchdog.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy Accuracy in meters or NaN
+     * @param speed Speed in m/s or NaN
+     * @return Accepted, Filtered or Rejected
+     */
+    public int ingest(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        long filtered = engine.getFiltered();
+        if (engine.update(time, longitude, latitude, accuracy, speed))
+        {
+            restartWatchdog();
+            return Accepted;
+        }
+        if (engine.getFiltered() != filtered)
+        {
+            restartWatchdog();
+            return Filtered;
+        }
+        startWatchdog();
+        return Rejected;
+    }
+    /**
+     * Raises anchor alarm unless it is muted. Alarm stays muted until
+     * muteAnchorAlarm has been called and mute time has elapsed.
+     * @param distance
+     * @return true if alarm was raised.
+     */
+    public boolean alarm(double distance)
+    {
+        if (muted)
+        {
+            return false;
+        }
+        muted = true;
+        anchorAlarms++;
+        listener.anchorAlarm(distance);
+        return true;
+    }
+    /**
+     * Anchor alarm is acknowledged. Alarm is resumed after mute time.
+     */
+    public void muteAnchorAlarm()
+    {
+        resume.arm(muteMillis);
+    }
+    /**
+     * Accuracy alarm is acknowledged. Watchdog starts again with next
+     * fix.
+     */
+    public void muteAccuracyAlarm()
+    {
+        watchdog.cancel();
+    }
+    /**
+     * Starts watchdog if it is not running. Called when location source
+     * changes.
+     */
+    public void startWatchdog()
+    {
+        if (!watchdog.isActive())
+        {
+            watchdog.arm(accuracyAlarmMillis);
+        }
+    }
+
+    private void restartWatchdog()
+    {
+        watchdog.arm(accuracyAlarmMillis);
+    }
+    /**
+     * Cancels watchdog and mute.
+     */
+    public void cancel()
+    {
+        watchdog.cancel();
+        resume.cancel();
+    }
+
+    public AnchorWatchEngine getEngine()
+    {
+        return engine;
+    }
+
+    public void setAccuracyAlarmMillis(long accuracyAlarmMillis)
+    {
+        this.accuracyAlarmMillis = accuracyAlarmMillis;
+    }
+
+    public void setMuteMillis(long muteMillis)
+    {
+        this.muteMillis = muteMillis;
+    }
+
+    public boolean isMuted()
+    {
+        return muted;
+    }
+
+    public long getAnchorAlarms()
+    {
+        return anchorAlarms;
+    }
+
+    public long getAccuracyAlarms()
+    {
+        return accuracyAlarms;
+    }
+
+    public long getResumes()
+    {
+        return resumes;
+    }
+    
+    public interface Listener
+    {
+        /**
+         * Anchor alarm was raised.
+         * @param distance 
+         */
+        void anchorAlarm(double distance);
+        /**
+         * No accepted fix during accuracy alarm time.
+         */
+        void accuracyAlarm();
+    }
+}
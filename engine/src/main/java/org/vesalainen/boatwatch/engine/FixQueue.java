@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * Bounded queue of primitive fixes between source threads and engine
+ * thread. Fixes are kept in parallel arrays, so that queuing doesn't
+ * allocate. Fixes offered to full queue are dropped.
+ *
+ * @author Timo Vesalainen
+ */
+public class FixQueue
+{
+    private final int[] source;
+    private final long[] time;
+    private final double[] longitude;
+    private final double[] latitude;
+    private final double[] accuracy;
+    private final double[] speed;
+    private int head;
+    private int size;
+    private long dropped;
+
+    public FixQueue(int capacity)
+    {
+        source = new int[capacity];
+        time = new long[capacity];
+        longitude = new double[capacity];
+        latitude = new double[capacity];
+        accuracy = new double[capacity];
+        speed = new double[capacity];
+    }
+    /**
+     * Adds fix to queue.
+     * @param src Source index
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy
+     * @param speed
+     * @return true if queue was empty, so that drain should be scheduled.
+     */
+    public synchronized boolean offer(int src, long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        int capacity = source.length;
+        if (size == capacity)
+        {
+            dropped++;
+            return false;
+        }
+        int index = (head + size) % capacity;
+        this.source[index] = src;
+        this.time[index] = time;
+        this.longitude[index] = longitude;
+        this.latitude[index] = latitude;
+        this.accuracy[index] = accuracy;
+        this.speed[index] = speed;
+        size++;
+        return size == 1;
+    }
+    /**
+     * Passes all queued fixes to consumer. Consumer is called without lock.
+     * @param consumer 
+     */
+    public void drain(Consumer consumer)
+    {
+        while (true)
+        {
+            int src;
+            long t;
+            double lon;
+            double lat;
+            double acc;
+            double spd;
+            synchronized (this)
+            {
+                if (size == 0)
+                {
+                    return;
+                }
+                src = source[head];
+                t = time[head];
+                lon = longitude[head];
+                lat = latitude[head];
+                acc = accuracy[head];
+                spd = speed[head];
+                head = (head + 1) % source.length;
+                size--;
+            }
+            consumer.fix(src, t, lon, lat, acc, spd);
+        }
+    }
+
+    public synchronized long getDropped()
+    {
+        return dropped;
+    }
+
+    public interface Consumer
+    {
+        void fix(int source, long time, double longitude, double latitude, double accuracy, double speed);
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * Receiver of location fixes. Missing accuracy or speed is passed as NaN.
+ *
+ * @author Timo Vesalainen
+ */
+public interface FixSink
+{
+    /**
+     * @param time Fix time in millis
+     * @param longitude
+     * @param latitude
+     * @param accuracy Accuracy in meters or NaN
+     * @param speed Speed in m/s or NaN
+     */
+    void fix(long time, double longitude, double latitude, double accuracy, double speed);
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * Hampel outlier filter over a trailing window of fixes in local metric
+ * coordinates. Fix is rejected if its distance from window median point is
+ * more than threshold. Threshold is the largest of k scaled median absolute
+ * deviations, minimum threshold, accuracy factor times fix accuracy and the
+ * distance boat can drag at drag speed since the oldest fix in window.
+ *
+ * <p>Window contains all fixes, also rejected ones, so that real movement
+ * is accepted after half window of fixes. Until window is full all fixes
+ * are accepted.
+ *
+ * @author Timo Vesalainen
+ */
+public class HampelFilter implements FixFilter
+{
+    private static final double DegreeMeters = 60*1852;
+    private static final double MadScale = 1.4826;
+    private final long[] ts;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] scratch;
+    private int head;
+    private int count;
+    private double k = 3;
+    private double minThreshold = 10;
+    private double accuracyFactor = 2;
+    private double dragSpeed = 1.0;
+    private boolean hasOrigin;
+    private double originLongitude;
+    private double originLatitude;
+    private double lonScale;
+    private long accepted;
+    private long rejected;
+
+    public HampelFilter()
+    {
+        this(7);
+    }
+    /**
+     * Creates filter
+     * @param window Number of previous fixes fix is compared to
+     */
+    public HampelFilter(int window)
+    {
+        if (window < 3)
+        {
+            throw new IllegalArgumentException("window "+window+" < 3");
+        }
+        ts = new long[window];
+        xs = new double[window];
+        ys = new double[window];
+        scratch = new double[window];
+    }
+
+    @Override
+    public boolean accept(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        if (!hasOrigin)
+        {
+            hasOrigin = true;
+            originLongitude = longitude;
+            originLatitude = latitude;
+            lonScale = DegreeMeters*Math.cos(Math.toRadians(latitude));
+        }
+        double x = (longitude - originLongitude)*lonScale;
+        double y = (latitude - originLatitude)*DegreeMeters;
+        boolean ok = true;
+        if (count == xs.length)
+        {
+            double mx = median(xs);
+            double my = median(ys);
+            for (int ii=0;ii<count;ii++)
+            {
+                scratch[ii] = Math.hypot(xs[ii] - mx, ys[ii] - my);
+            }
+            double mad = median(scratch);
+            double threshold = Math.max(k*MadScale*mad, minThreshold);
+            if (!Double.isNaN(accuracy))
+            {
+                threshold = Math.max(threshold, accuracyFactor*accuracy);
+            }
+            if (time > ts[head])
+            {
+                threshold = Math.max(threshold, (time - ts[head])*dragSpeed/1000);
+            }
+            ok = Math.hypot(x - mx, y - my) <= threshold;
+        }
+        ts[head] = time;
+        xs[head] = x;
+        ys[head] = y;
+        head = (head + 1) % xs.length;
+        if (count < xs.length)
+        {
+            count++;
+        }
+        if (ok)
+        {
+            accepted++;
+        }
+        else
+        {
+            rejected++;
+        }
+        return ok;
+    }
+    /**
+     * Returns median of full window. Uses scratch array.
+     */
+    private double median(double[] arr)
+    {
+        int n = count;
+        if (arr != scratch)
+        {
+            System.arraycopy(arr, 0, scratch, 0, n);
+        }
+        for (int ii=1;ii<n;ii++)
+        {
+            double v = scratch[ii];
+            int jj = ii-1;
+            while (jj >= 0 && scratch[jj] > v)
+            {
+                scratch[jj+1] = scratch[jj];
+                jj--;
+            }
+            scratch[jj+1] = v;
+        }
+        if ((n & 1) == 1)
+        {
+            return scratch[n/2];
+        }
+        else
+        {
+            return (scratch[n/2-1] + scratch[n/2])/2;
+        }
+    }
+
+    @Override
+    public void reset()
+    {
+        head = 0;
+        count = 0;
+        hasOrigin = false;
+    }
+    /**
+     * Sets number of scaled median absolute deviations allowed.
+     * @param k 
+     */
+    public void setK(double k)
+    {
+        this.k = k;
+    }
+    /**
+     * Sets distance in meters that is always accepted.
+     * @param meters 
+     */
+    public void setMinThreshold(double meters)
+    {
+        this.minThreshold = meters;
+    }
+    /**
+     * Sets multiplier of fix accuracy that is always accepted.
+     * @param accuracyFactor 
+     */
+    public void setAccuracyFactor(double accuracyFactor)
+    {
+        this.accuracyFactor = accuracyFactor;
+    }
+
+    @Override
+    public void setDragSpeed(double dragSpeed)
+    {
+        this.dragSpeed = dragSpeed;
+    }
+
+    public long getAccepted()
+    {
+        return accepted;
+    }
+
+    public long getRejected()
+    {
+        return rejected;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * Streams screen projected polyline points into line segments in
+ * Canvas.drawLines format, leaving out segments that don't change the
+ * picture.
+ *
+ * <p>Point closer than tolerance pixels to the last drawn point is skipped.
+ * Segment outside viewport is culled. Viewport is divided to cells of
+ * tolerance size and cells that segments pass through are marked. Segment
+ * whose every cell is already marked is covered by drawn segments within
+ * cell size and is left out. Every drawn segment marks at least one new
+ * cell, so number of drawn segments is limited by screen size and
+ * tolerance rather than by number of points.
+ *
+ * @author Timo Vesalainen
+ */
+public class LineSimplifier
+{
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+    private float tolerance = 2;
+    private int columns;
+    private int rows;
+    private long[] cells = new long[0];
+    private final float[] clip = new float[8];
+    private boolean started;
+    private float lastX;
+    private float lastY;
+    private long points;
+    private long lines;
+    private long culled;
+    private long covered;
+    /**
+     * Starts new polyline. Cell map size depends only on viewport size and
+     * tolerance.
+     * @param left
+     * @param top
+     * @param right
+     * @param bottom
+     * @param tolerance Tolerance in pixels
+     */
+    public void reset(float left, float top, float right, float bottom, float tolerance)
+    {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.tolerance = Math.max(tolerance, 0.5F);
+        columns = (int) ((right - left)/this.tolerance) + 1;
+        rows = (int) ((bottom - top)/this.tolerance) + 1;
+        int words = (columns*rows + 63)/64;
+        if (cells.length < words)
+        {
+            cells = new long[words];
+        }
+        else
+        {
+            for (int ii=0;ii<words;ii++)
+            {
+                cells[ii] = 0;
+            }
+        }
+        started = false;
+    }
+    /**
+     * Adds point to polyline.
+     * @param x Screen x
+     * @param y Screen y
+     * @param arr Lines array. Must have room for 4 floats after len.
+     * @param len Number of floats used in arr
+     * @return New number of floats used in arr
+     */
+    public int add(float x, float y, float[] arr, int len)
+    {
+        points++;
+        if (!started)
+        {
+            started = true;
+            lastX = x;
+            lastY = y;
+            return len;
+        }
+        float x0 = lastX;
+        float y0 = lastY;
+        if (Math.abs(x - x0) < tolerance && Math.abs(y - y0) < tolerance)
+        {
+            return len;
+        }
+        lastX = x;
+        lastY = y;
+        if (
+                (x0 < left && x < left) ||
+                (x0 > right && x > right) ||
+                (y0 < top && y < top) ||
+                (y0 > bottom && y > bottom)
+                )
+        {
+            culled++;
+            return len;
+        }
+        if (!mark(x0, y0, x, y))
+        {
+            covered++;
+            return len;
+        }
+        arr[len++] = x0;
+        arr[len++] = y0;
+        arr[len++] = x;
+        arr[len++] = y;
+        lines++;
+        return len;
+    }
+
+    /**
+     * Marks cells along the part of segment inside viewport.
+     * @return true if any cell was not marked before.
+     */
+    private boolean mark(float x0, float y0, float x1, float y1)
+    {
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        // Liang-Barsky clip
+        float t0 = 0;
+        float t1 = 1;
+        float[] p = clip;
+        p[0] = -dx;
+        p[1] = dx;
+        p[2] = -dy;
+        p[3] = dy;
+        p[4] = x0 - left;
+        p[5] = right - x0;
+        p[6] = y0 - top;
+        p[7] = bottom - y0;
+        for (int ii=0;ii<4;ii++)
+        {
+            float pi = p[ii];
+            float qi = p[ii+4];
+            if (pi == 0)
+            {
+                if (qi < 0)
+                {
+                    return false;
+                }
+            }
+            else
+            {
+                float t = qi/pi;
+                if (pi < 0)
+                {
+                    t0 = Math.max(t0, t);
+                }
+                else
+                {
+                    t1 = Math.min(t1, t);
+                }
+            }
+        }
+        if (t0 > t1)
+        {
+            return false;
+        }
+        float cx = (x0 + t0*dx - left)/tolerance;
+        float cy = (y0 + t0*dy - top)/tolerance;
+        float ex = (x0 + t1*dx - left)/tolerance;
+        float ey = (y0 + t1*dy - top)/tolerance;
+        int steps = (int) Math.max(Math.abs(ex - cx), Math.abs(ey - cy)) + 1;
+        float sx = (ex - cx)/steps;
+        float sy = (ey - cy)/steps;
+        int maxColumn = columns-1;
+        int maxRow = rows-1;
+        boolean marked = false;
+        for (int ii=0;ii<=steps;ii++)
+        {
+            int col = Math.min(Math.max((int) cx, 0), maxColumn);
+            int row = Math.min(Math.max((int) cy, 0), maxRow);
+            int c = row*columns+col;
+            long bit = 1L << c;
+            int w = c >> 6;
+            if ((cells[w] & bit) == 0)
+            {
+                cells[w] |= bit;
+                marked = true;
+            }
+            cx += sx;
+            cy += sy;
+        }
+        return marked;
+    }
+
+    /**
+     * Returns number of points added.
+     * @return 
+     */
+    public long getPoints()
+    {
+        return points;
+    }
+    /**
+     * Returns number of segments written.
+     * @return 
+     */
+    public long getLines()
+    {
+        return lines;
+    }
+    /**
+     * Returns number of segments outside viewport.
+     * @return 
+     */
+    public long getCulled()
+    {
+        return culled;
+    }
+    /**
+     * Returns number of segments left out because they were already
+     * covered.
+     * @return 
+     */
+    public long getCovered()
+    {
+        return covered;
+    }
+
+}
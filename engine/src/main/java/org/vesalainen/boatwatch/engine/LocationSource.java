@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.IOException;
+
+/**
+ * Source of fixes managed by LocationSourceManager.
+ *
+ * @author Timo Vesalainen
+ */
+public interface LocationSource
+{
+    /**
+     * Returns unique name. Names are used as preference values.
+     * @return 
+     */
+    String getName();
+    /**
+     * Returns true if fix times are real measurement times, so that time
+     * from fix time to receipt is latency. Simulated and replayed fixes have
+     * synthetic times.
+     * @return 
+     */
+    boolean isRealTime();
+    /**
+     * Starts delivering fixes to sink. Sink can be called in any thread.
+     * @param sink
+     * @throws IOException 
+     */
+    void start(FixSink sink) throws IOException;
+    /**
+     * Stops delivering fixes. Fixes already on their way can still arrive.
+     */
+    void stop();
+    /**
+     * Requests fix interval. Sources that cannot control their rate ignore
+     * this.
+     * @param millis Minimum time between fixes
+     * @param minDistance Minimum distance in meters between fixes
+     */
+    void setInterval(long millis, double minDistance);
+}
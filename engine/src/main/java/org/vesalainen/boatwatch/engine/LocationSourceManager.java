@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import org.vesalainen.boatwatch.engine.DeadlineScheduler.Deadline;
+
+/**
+ * Owns location sources and forwards fixes of active source to target sink
+ * in engine thread. Switching source doesn't touch the watch.
+ *
+ * <p>If selected source delivers no fix within failover time, fallback
+ * source is started and made active. Selected source keeps running and
+ * becomes active again with its next fix.
+ *
+ * <p>Methods other than getters must be called in engine thread.
+ *
+ * @author Timo Vesalainen
+ */
+public class LocationSourceManager implements FixQueue.Consumer
+{
+    private final Clock clock;
+    private final Executor engine;
+    private final FixSink target;
+    private final FixQueue queue = new FixQueue(64);
+    private Entry[] entries = new Entry[0];
+    private Entry selected;
+    private Entry fallback;
+    private volatile Entry active;
+    private long failoverMillis = 30000;
+    private long intervalMillis;
+    private double minDistance;
+    private volatile long failovers;
+    private final Deadline failoverDeadline;
+    private final Runnable drain = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            queue.drain(LocationSourceManager.this);
+        }
+    };
+    private final Runnable failover = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            failover();
+        }
+    };
+    /**
+     * Creates manager.
+     * @param scheduler Scheduler for failover deadline. Should not be started
+     * yet.
+     * @param engine Executor running in engine thread
+     * @param target 
+     */
+    public LocationSourceManager(DeadlineScheduler scheduler, Executor engine, FixSink target)
+    {
+        this.clock = scheduler.getClock();
+        this.engine = engine;
+        this.target = target;
+        this.failoverDeadline = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                LocationSourceManager.this.engine.execute(failover);
+            }
+        });
+    }
+    /**
+     * Adds source or replaces source with same name. Running replaced source
+     * is stopped and the new one is started.
+     * @param source 
+     */
+    public void put(LocationSource source)
+    {
+        Entry entry = getEntry(source.getName());
+        if (entry == null)
+        {
+            entry = new Entry(entries.length, source);
+            Entry[] arr = Arrays.copyOf(entries, entries.length+1);
+            arr[entry.index] = entry;
+            entries = arr;
+        }
+        else
+        {
+            boolean running = entry.running;
+            stop(entry);
+            entry.source = source;
+            if (running)
+            {
+                start(entry);
+            }
+        }
+    }
+    /**
+     * Selects source. Other sources are stopped.
+     * @param name 
+     */
+    public void select(String name)
+    {
+        Entry entry = getEntry(name);
+        if (entry == null)
+        {
+            throw new IllegalArgumentException(name+" not found");
+        }
+        for (Entry e : entries)
+        {
+            if (e != entry)
+            {
+                stop(e);
+            }
+        }
+        selected = entry;
+        active = entry;
+        start(entry);
+        failoverDeadline.arm(failoverDelay());
+    }
+    /**
+     * Sets source started when selected source fails.
+     * @param name Source name or null for no fallback
+     */
+    public void setFallback(String name)
+    {
+        fallback = name != null ? getEntry(name) : null;
+    }
+
+    public void setFailoverMillis(long failoverMillis)
+    {
+        this.failoverMillis = failoverMillis;
+    }
+    /**
+     * Passes requested fix interval to all sources.
+     * @param millis
+     * @param minDistance 
+     */
+    public void setInterval(long millis, double minDistance)
+    {
+        this.intervalMillis = millis;
+        this.minDistance = minDistance;
+        for (Entry e : entries)
+        {
+            e.source.setInterval(millis, minDistance);
+        }
+    }
+    /**
+     * Stops all sources.
+     */
+    public void stop()
+    {
+        failoverDeadline.cancel();
+        for (Entry e : entries)
+        {
+            stop(e);
+        }
+        selected = null;
+        active = null;
+    }
+
+    private void start(Entry entry)
+    {
+        if (!entry.running)
+        {
+            entry.running = true;
+            entry.startTime = clock.millis();
+            entry.source.setInterval(intervalMillis, minDistance);
+            try
+            {
+                entry.source.start(entry);
+                entry.error = null;
+            }
+            catch (IOException ex)
+            {
+                entry.error = ex;
+                entry.running = false;
+                entry.runMillis += clock.millis() - entry.startTime;
+                if (entry == selected)
+                {
+                    failoverDeadline.arm(0);
+                }
+            }
+        }
+    }
+
+    private void stop(Entry entry)
+    {
+        if (entry.running)
+        {
+            entry.source.stop();
+            entry.running = false;
+            entry.runMillis += clock.millis() - entry.startTime;
+        }
+    }
+
+    private void failover()
+    {
+        if (active == selected && fallback != null && fallback != selected)
+        {
+            start(fallback);
+            active = fallback;
+            failovers++;
+        }
+    }
+
+    private long failoverDelay()
+    {
+        return failoverMillis + intervalMillis;
+    }
+
+    @Override
+    public void fix(int source, long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        Entry entry = entries[source];
+        if (!entry.running)
+        {
+            return;
+        }
+        entry.fixes++;
+        if (entry == selected && active != selected)
+        {
+            stop(active);
+            active = selected;
+        }
+        if (entry == active)
+        {
+            if (entry == selected)
+            {
+                failoverDeadline.arm(failoverDelay());
+            }
+            target.fix(time, longitude, latitude, accuracy, speed);
+        }
+    }
+
+    public Entry getEntry(String name)
+    {
+        for (Entry e : entries)
+        {
+            if (e.source.getName().equals(name))
+            {
+                return e;
+            }
+        }
+        return null;
+    }
+    /**
+     * Returns entries. Returned array must not be modified.
+     * @return 
+     */
+    public Entry[] getEntries()
+    {
+        return entries;
+    }
+
+    public Entry getActive()
+    {
+        return active;
+    }
+
+    public String getSelectedName()
+    {
+        Entry s = selected;
+        return s != null ? s.getName() : null;
+    }
+
+    public long getFailovers()
+    {
+        return failovers;
+    }
+
+    public long getDropped()
+    {
+        return queue.getDropped();
+    }
+    /**
+     * Source with counters. Sources deliver fixes to their entry.
+     */
+    public class Entry implements FixSink
+    {
+        private final int index;
+        private volatile LocationSource source;
+        private volatile boolean running;
+        private volatile IOException error;
+        private volatile long fixes;
+        private volatile long latencies;
+        private volatile long latencySum;
+        private volatile long maxLatency;
+        private volatile long startTime;
+        private volatile long runMillis;
+
+        private Entry(int index, LocationSource source)
+        {
+            this.index = index;
+            this.source = source;
+        }
+
+        @Override
+        public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+        {
+            LocationSource s = source;
+            if (s.isRealTime())
+            {
+                long latency = clock.millis() - time;
+                latencies++;
+                latencySum += latency;
+                maxLatency = Math.max(maxLatency, latency);
+            }
+            if (queue.offer(index, time, longitude, latitude, accuracy, speed))
+            {
+                engine.execute(drain);
+            }
+        }
+
+        public String getName()
+        {
+            return source.getName();
+        }
+
+        public boolean isRunning()
+        {
+            return running;
+        }
+        /**
+         * Returns last start error or null.
+         * @return 
+         */
+        public IOException getError()
+        {
+            return error;
+        }
+
+        public long getFixes()
+        {
+            return fixes;
+        }
+        /**
+         * Returns fixes per minute while running.
+         * @return 
+         */
+        public double getRate()
+        {
+            long millis = runMillis;
+            if (running)
+            {
+                millis += clock.millis() - startTime;
+            }
+            return millis > 0 ? fixes*60000.0/millis : 0;
+        }
+        /**
+         * Returns mean time from fix time to receipt from source in millis.
+         * Latency is measured only for real time sources.
+         * @return Mean latency or NaN if not measured.
+         * @see LocationSource#isRealTime() 
+         */
+        public double getMeanLatency()
+        {
+            long l = latencies;
+            return l > 0 ? (double)latencySum/l : Double.NaN;
+        }
+
+        public long getMaxLatency()
+        {
+            return maxLatency;
+        }
+
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of named service metrics.
+ *
+ * <p>Metrics are registered at setup time and kept in copy-on-write array.
+ * Updating a metric is a few atomic operations on AtomicLong and doesn't
+ * lock or allocate, so that metrics can be updated in engine, source and
+ * main thread hot paths. Only dump allocates.
+ *
+ * @author Timo Vesalainen
+ */
+public class Metrics
+{
+    private final Clock clock;
+    private volatile Metric[] metrics = new Metric[0];
+
+    public Metrics(Clock clock)
+    {
+        this.clock = clock;
+    }
+    /**
+     * Registers counter.
+     * @param name
+     * @return 
+     */
+    public Counter counter(String name)
+    {
+        return register(new Counter(name));
+    }
+    /**
+     * Registers gauge.
+     * @param name
+     * @return 
+     */
+    public Gauge gauge(String name)
+    {
+        return register(new Gauge(name));
+    }
+    /**
+     * Registers timer.
+     * @param name
+     * @return 
+     */
+    public Timer timer(String name)
+    {
+        return register(new Timer(name));
+    }
+    /**
+     * Registers duration.
+     * @param name
+     * @return 
+     */
+    public Duration duration(String name)
+    {
+        return register(new Duration(name));
+    }
+
+    private synchronized <T extends Metric> T register(T metric)
+    {
+        if (get(metric.name) != null)
+        {
+            throw new IllegalArgumentException(metric.name+" already registered");
+        }
+        Metric[] arr = Arrays.copyOf(metrics, metrics.length+1);
+        arr[arr.length-1] = metric;
+        metrics = arr;
+        return metric;
+    }
+    /**
+     * Returns metric or null.
+     * @param name
+     * @return 
+     */
+    public Metric get(String name)
+    {
+        for (Metric metric : metrics)
+        {
+            if (metric.name.equals(name))
+            {
+                return metric;
+            }
+        }
+        return null;
+    }
+    /**
+     * Resets all metrics.
+     */
+    public void reset()
+    {
+        for (Metric metric : metrics)
+        {
+            metric.reset();
+        }
+    }
+    /**
+     * Returns metrics as plain text. One metric per line.
+     * @return 
+     */
+    public String dump()
+    {
+        StringBuilder sb = new StringBuilder();
+        dump(sb);
+        return sb.toString();
+    }
+    /**
+     * Appends metrics as plain text. One metric per line.
+     * @param sb 
+     */
+    public void dump(StringBuilder sb)
+    {
+        for (Metric metric : metrics)
+        {
+            sb.append(metric.name).append(' ');
+            metric.dump(sb);
+            sb.append('\n');
+        }
+    }
+
+    public abstract class Metric
+    {
+        protected final String name;
+
+        protected Metric(String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        protected abstract void reset();
+
+        protected abstract void dump(StringBuilder sb);
+    }
+    /**
+     * Monotonic count.
+     */
+    public class Counter extends Metric
+    {
+        private final AtomicLong count = new AtomicLong();
+
+        private Counter(String name)
+        {
+            super(name);
+        }
+
+        public void increment()
+        {
+            count.incrementAndGet();
+        }
+
+        public void add(long delta)
+        {
+            count.addAndGet(delta);
+        }
+
+        public long get()
+        {
+            return count.get();
+        }
+
+        @Override
+        protected void reset()
+        {
+            count.set(0);
+        }
+
+        @Override
+        protected void dump(StringBuilder sb)
+        {
+            sb.append(count.get());
+        }
+    }
+    /**
+     * Current value.
+     */
+    public class Gauge extends Metric
+    {
+        private final AtomicLong value = new AtomicLong();
+
+        private Gauge(String name)
+        {
+            super(name);
+        }
+
+        public void set(long value)
+        {
+            this.value.set(value);
+        }
+
+        public long get()
+        {
+            return value.get();
+        }
+
+        @Override
+        protected void reset()
+        {
+            value.set(0);
+        }
+
+        @Override
+        protected void dump(StringBuilder sb)
+        {
+            sb.append(value.get());
+        }
+    }
+    /**
+     * Count, total and maximum of measured nanoseconds.
+     */
+    public class Timer extends Metric
+    {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Timer(String name)
+        {
+            super(name);
+        }
+        /**
+         * Records time measured from start.
+         * @param startNanos System.nanoTime() at start
+         */
+        public void since(long startNanos)
+        {
+            add(System.nanoTime() - startNanos);
+        }
+
+        public void add(long nanos)
+        {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+            {
+                max = maxNanos.get();
+            }
+        }
+
+        public long getCount()
+        {
+            return count.get();
+        }
+
+        public long getTotalNanos()
+        {
+            return totalNanos.get();
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos.get();
+        }
+
+        @Override
+        protected void reset()
+        {
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        @Override
+        protected void dump(StringBuilder sb)
+        {
+            long cnt = count.get();
+            long total = totalNanos.get();
+            sb.append("count=").append(cnt);
+            sb.append(" total=").append(total).append("ns");
+            sb.append(" mean=").append(cnt > 0 ? total/cnt : 0).append("ns");
+            sb.append(" max=").append(maxNanos.get()).append("ns");
+        }
+    }
+    /**
+     * Total time something has been held. Time of ongoing hold is included.
+     */
+    public class Duration extends Metric
+    {
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong since = new AtomicLong(-1);
+
+        private Duration(String name)
+        {
+            super(name);
+        }
+        /**
+         * Starts hold. Does nothing if already started.
+         */
+        public void start()
+        {
+            since.compareAndSet(-1, clock.millis());
+        }
+        /**
+         * Ends hold. Does nothing if not started.
+         */
+        public void stop()
+        {
+            long s = since.getAndSet(-1);
+            if (s != -1)
+            {
+                totalMillis.addAndGet(clock.millis() - s);
+            }
+        }
+
+        public boolean isStarted()
+        {
+            return since.get() != -1;
+        }
+        /**
+         * Returns total milliseconds including ongoing hold.
+         * @return 
+         */
+        public long getMillis()
+        {
+            long s = since.get();
+            long total = totalMillis.get();
+            if (s != -1)
+            {
+                total += clock.millis() - s;
+            }
+            return total;
+        }
+
+        @Override
+        protected void reset()
+        {
+            totalMillis.set(0);
+            if (since.get() != -1)
+            {
+                since.set(clock.millis());
+            }
+        }
+
+        @Override
+        protected void dump(StringBuilder sb)
+        {
+            sb.append(getMillis()).append("ms");
+            if (isStarted())
+            {
+                sb.append(" held");
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Reads NMEA from TCP or UDP into NmeaParser in its own thread. Fixes are
+ * emitted in client thread. Host name is resolved in client thread. Lost
+ * TCP connection is reopened after retry delay.
+ *
+ * @author Timo Vesalainen
+ */
+public class NmeaClient implements Runnable, Closeable
+{
+    private static final long RetryMillis = 5000;
+    private final NmeaParser parser;
+    private final String host;
+    private final int port;
+    private final boolean udp;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+    private volatile ByteChannel channel;
+    private volatile boolean running;
+    private Thread thread;
+    private volatile long bytes;
+    private volatile long connects;
+    /**
+     * Creates client.
+     * @param parser
+     * @param host TCP server host. Ignored for UDP.
+     * @param port TCP server port or UDP local port
+     * @param udp 
+     */
+    public NmeaClient(NmeaParser parser, String host, int port, boolean udp)
+    {
+        this.parser = parser;
+        this.host = host;
+        this.port = port;
+        this.udp = udp;
+    }
+
+    public synchronized void start()
+    {
+        if (thread == null)
+        {
+            running = true;
+            thread = new Thread(this, "NmeaClient "+(udp ? "udp" : host)+":"+port);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        running = false;
+        ByteChannel ch = channel;
+        if (ch != null)
+        {
+            ch.close();
+        }
+        if (thread != null)
+        {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (running)
+        {
+            try (ByteChannel ch = open())
+            {
+                channel = ch;
+                connects++;
+                parser.reset();
+                while (running)
+                {
+                    buffer.clear();
+                    int rc = read(ch);
+                    if (rc == -1)
+                    {
+                        break;
+                    }
+                    bytes += rc;
+                    buffer.flip();
+                    parser.parse(buffer);
+                }
+                parser.flush();
+            }
+            catch (IOException ex)
+            {
+                if (!running)
+                {
+                    break;
+                }
+            }
+            channel = null;
+            if (running)
+            {
+                try
+                {
+                    Thread.sleep(RetryMillis);
+                }
+                catch (InterruptedException ex)
+                {
+                    break;
+                }
+            }
+        }
+    }
+
+    private ByteChannel open() throws IOException
+    {
+        if (udp)
+        {
+            DatagramChannel dc = DatagramChannel.open();
+            dc.socket().setReuseAddress(true);
+            dc.socket().bind(new InetSocketAddress(port));
+            return dc;
+        }
+        else
+        {
+            return SocketChannel.open(new InetSocketAddress(host, port));
+        }
+    }
+
+    private int read(ByteChannel ch) throws IOException
+    {
+        if (udp)
+        {
+            ((DatagramChannel)ch).receive(buffer);
+            return buffer.position();
+        }
+        else
+        {
+            return ch.read(buffer);
+        }
+    }
+
+    public NmeaParser getParser()
+    {
+        return parser;
+    }
+
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    public long getConnects()
+    {
+        return connects;
+    }
+
+}
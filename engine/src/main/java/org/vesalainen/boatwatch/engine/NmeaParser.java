@@ -0,0 +1,494 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming NMEA 0183 parser. Sentences are decoded from bytes without
+ * creating objects. Sentences without valid checksum are dropped.
+ *
+ * <p>Position is taken from GGA, RMC and GLL. Accuracy is HDOP from GGA or
+ * GSA multiplied by user equivalent range error. Speed is from RMC. Date is
+ * from RMC. Until RMC is seen, date is taken from clock.
+ *
+ * <p>Sentences with the same time form a receiver epoch. One fix is emitted
+ * per epoch after its sentences are collected: when the epoch has every
+ * sentence type of previous epoch, or at latest when next epoch starts.
+ * GSA has no time. It belongs to the open epoch, or to the next one if open
+ * epoch was already emitted. If epoch has no HDOP, accuracy is NaN, unknown.
+ *
+ * @author Timo Vesalainen
+ */
+public class NmeaParser
+{
+    private static final long DayMillis = 86400000L;
+    private static final double KnotsToMps = 1852.0/3600.0;
+    private static final int MaxFields = 32;
+    private final Clock clock;
+    private final FixSink sink;
+    private final byte[] buf = new byte[128];
+    private int length;
+    private boolean inSentence;
+    private final int[] start = new int[MaxFields];
+    private final int[] end = new int[MaxFields];
+    private int fieldCount;
+    private double uere = 5;
+    private static final int GGA = 1;
+    private static final int RMC = 2;
+    private static final int GLL = 4;
+    private static final int GSA = 8;
+    private boolean open;
+    private boolean emitted;
+    private int types;
+    private int expectedTypes;
+    private double longitude;
+    private double latitude;
+    private double hdop = Double.NaN;
+    private double speed = Double.NaN;
+    private double nextHdop = Double.NaN;
+    private long dateMillis = Long.MIN_VALUE;
+    private long lastTime = Long.MIN_VALUE;
+    private long sentences;
+    private long errors;
+    private long fixes;
+
+    public NmeaParser(Clock clock, FixSink sink)
+    {
+        this.clock = clock;
+        this.sink = sink;
+    }
+    /**
+     * Parses all remaining bytes. Incomplete sentence is kept until next
+     * call.
+     * @param bb 
+     */
+    public void parse(ByteBuffer bb)
+    {
+        while (bb.hasRemaining())
+        {
+            byte b = bb.get();
+            switch (b)
+            {
+                case '$':
+                    inSentence = true;
+                    length = 0;
+                    break;
+                case '\r':
+                case '\n':
+                    if (inSentence)
+                    {
+                        inSentence = false;
+                        sentence();
+                    }
+                    break;
+                default:
+                    if (inSentence)
+                    {
+                        if (length < buf.length)
+                        {
+                            buf[length++] = b;
+                        }
+                        else
+                        {
+                            inSentence = false;
+                            errors++;
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+    /**
+     * Clears partial sentence and remembered epoch state.
+     */
+    public void reset()
+    {
+        inSentence = false;
+        open = false;
+        emitted = false;
+        types = 0;
+        expectedTypes = 0;
+        hdop = Double.NaN;
+        speed = Double.NaN;
+        nextHdop = Double.NaN;
+        dateMillis = Long.MIN_VALUE;
+        lastTime = Long.MIN_VALUE;
+    }
+    /**
+     * Emits open epoch if it has not been emitted. Call at end of stream.
+     */
+    public void flush()
+    {
+        if (open && !emitted)
+        {
+            emit();
+        }
+    }
+
+    private void sentence()
+    {
+        int star = length - 3;
+        if (star < 6 || buf[star] != '*')
+        {
+            errors++;
+            return;
+        }
+        int sum = 0;
+        for (int ii=0;ii<star;ii++)
+        {
+            sum ^= buf[ii];
+        }
+        int h = hex(buf[star+1]);
+        int l = hex(buf[star+2]);
+        if (h < 0 || l < 0 || (h<<4|l) != sum)
+        {
+            errors++;
+            return;
+        }
+        fieldCount = 0;
+        int s = 0;
+        for (int ii=0;ii<=star && fieldCount<MaxFields;ii++)
+        {
+            if (ii == star || buf[ii] == ',')
+            {
+                start[fieldCount] = s;
+                end[fieldCount] = ii;
+                fieldCount++;
+                s = ii+1;
+            }
+        }
+        sentences++;
+        if (end[0] - start[0] < 5)
+        {
+            return;
+        }
+        int t = end[0]-3;
+        byte c0 = buf[t];
+        byte c1 = buf[t+1];
+        byte c2 = buf[t+2];
+        if (c0 == 'G' && c1 == 'G' && c2 == 'A')
+        {
+            gga();
+        }
+        else
+        {
+            if (c0 == 'R' && c1 == 'M' && c2 == 'C')
+            {
+                rmc();
+            }
+            else
+            {
+                if (c0 == 'G' && c1 == 'L' && c2 == 'L')
+                {
+                    gll();
+                }
+                else
+                {
+                    if (c0 == 'G' && c1 == 'S' && c2 == 'A')
+                    {
+                        gsa();
+                    }
+                }
+            }
+        }
+    }
+
+    private void gga()
+    {
+        if (fieldCount < 9 || parseDouble(6) < 1)
+        {
+            return;
+        }
+        if (position(1, 2, 4))
+        {
+            double h = parseDouble(8);
+            if (!Double.isNaN(h))
+            {
+                hdop = h;
+            }
+            collected(GGA);
+        }
+    }
+
+    private void rmc()
+    {
+        if (fieldCount < 10 || !is(2, 'A'))
+        {
+            return;
+        }
+        double date = parseDouble(9);
+        if (!Double.isNaN(date))
+        {
+            int d = (int) date;
+            int yy = d%100;
+            dateMillis = daysFromCivil(yy < 80 ? 2000+yy : 1900+yy, d/100%100, d/10000)*DayMillis;
+        }
+        if (position(1, 3, 5))
+        {
+            double knots = parseDouble(7);
+            if (!Double.isNaN(knots))
+            {
+                speed = knots*KnotsToMps;
+            }
+            collected(RMC);
+        }
+    }
+
+    private void gll()
+    {
+        if (fieldCount < 7 || !is(6, 'A'))
+        {
+            return;
+        }
+        if (position(5, 1, 3))
+        {
+            collected(GLL);
+        }
+    }
+
+    private void gsa()
+    {
+        if (fieldCount < 17 || parseDouble(2) < 2)
+        {
+            return;
+        }
+        double h = parseDouble(16);
+        if (open && !emitted)
+        {
+            if (!Double.isNaN(h) && Double.isNaN(hdop))
+            {
+                hdop = h;
+            }
+            collected(GSA);
+        }
+        else
+        {
+            nextHdop = h;
+        }
+    }
+    /**
+     * Sets epoch position. Previous epoch is emitted if time differs from
+     * it.
+     * @return false if sentence has no position or its epoch was already
+     * emitted.
+     */
+    private boolean position(int timeField, int latField, int lonField)
+    {
+        double tod = parseDouble(timeField);
+        double lat = parseDouble(latField);
+        double lon = parseDouble(lonField);
+        if (Double.isNaN(tod) || Double.isNaN(lat) || Double.isNaN(lon))
+        {
+            return false;
+        }
+        long time = time(tod);
+        if (open && time == lastTime)
+        {
+            if (emitted)
+            {
+                return false;
+            }
+        }
+        else
+        {
+            if (open)
+            {
+                expectedTypes = types;
+                if (!emitted)
+                {
+                    emit();
+                }
+            }
+            open = true;
+            emitted = false;
+            types = 0;
+            hdop = nextHdop;
+            nextHdop = Double.NaN;
+            speed = Double.NaN;
+            lastTime = time;
+        }
+        latitude = degrees(lat);
+        if (is(latField+1, 'S'))
+        {
+            latitude = -latitude;
+        }
+        longitude = degrees(lon);
+        if (is(lonField+1, 'W'))
+        {
+            longitude = -longitude;
+        }
+        return true;
+    }
+    /**
+     * Adds sentence type to open epoch and emits epoch if it has every type
+     * of previous epoch.
+     */
+    private void collected(int type)
+    {
+        types |= type;
+        if (expectedTypes != 0 && (types & expectedTypes) == expectedTypes)
+        {
+            emit();
+        }
+    }
+
+    private void emit()
+    {
+        emitted = true;
+        fixes++;
+        sink.fix(lastTime, longitude, latitude, hdop*uere, speed);
+    }
+
+    private long time(double hhmmss)
+    {
+        int hms = (int) hhmmss;
+        long tod = ((hms/10000)*3600 + (hms/100%100)*60 + hms%100)*1000L + Math.round((hhmmss-hms)*1000);
+        long reference = lastTime != Long.MIN_VALUE ? lastTime : clock.millis();
+        long day = dateMillis != Long.MIN_VALUE ? dateMillis : (reference/DayMillis)*DayMillis;
+        long time = day + tod;
+        if (time < reference - DayMillis/2)
+        {
+            time += DayMillis;
+        }
+        else
+        {
+            if (time > reference + DayMillis/2 && dateMillis == Long.MIN_VALUE)
+            {
+                time -= DayMillis;
+            }
+        }
+        return time;
+    }
+
+    private static double degrees(double dddmm)
+    {
+        double deg = Math.floor(dddmm/100);
+        return deg + (dddmm - deg*100)/60;
+    }
+
+    private boolean is(int field, char c)
+    {
+        return field < fieldCount && end[field] > start[field] && buf[start[field]] == c;
+    }
+    /**
+     * Parses unsigned or signed decimal field.
+     * @param field
+     * @return Value or NaN if field is missing, empty or not a number
+     */
+    private double parseDouble(int field)
+    {
+        if (field >= fieldCount)
+        {
+            return Double.NaN;
+        }
+        int s = start[field];
+        int e = end[field];
+        if (s == e)
+        {
+            return Double.NaN;
+        }
+        boolean negative = false;
+        if (buf[s] == '-')
+        {
+            negative = true;
+            s++;
+        }
+        long mantissa = 0;
+        long divisor = 1;
+        boolean decimal = false;
+        for (int ii=s;ii<e;ii++)
+        {
+            byte b = buf[ii];
+            if (b >= '0' && b <= '9')
+            {
+                mantissa = mantissa*10 + (b - '0');
+                if (decimal)
+                {
+                    divisor *= 10;
+                }
+            }
+            else
+            {
+                if (b == '.' && !decimal)
+                {
+                    decimal = true;
+                }
+                else
+                {
+                    return Double.NaN;
+                }
+            }
+        }
+        double v = (double)mantissa/divisor;
+        return negative ? -v : v;
+    }
+
+    private static int hex(byte b)
+    {
+        if (b >= '0' && b <= '9')
+        {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F')
+        {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f')
+        {
+            return b - 'a' + 10;
+        }
+        return -1;
+    }
+    /**
+     * Returns days since 1970-01-01 for proleptic Gregorian date.
+     */
+    private static long daysFromCivil(int y, int m, int d)
+    {
+        y -= m <= 2 ? 1 : 0;
+        int era = (y >= 0 ? y : y-399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153*(m + (m > 2 ? -3 : 9)) + 2)/5 + d-1;
+        int doe = yoe * 365 + yoe/4 - yoe/100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+    /**
+     * Sets user equivalent range error used to convert HDOP to accuracy.
+     * @param meters 
+     */
+    public void setUere(double meters)
+    {
+        this.uere = meters;
+    }
+
+    public long getSentences()
+    {
+        return sentences;
+    }
+
+    public long getErrors()
+    {
+        return errors;
+    }
+
+    public long getFixes()
+    {
+        return fixes;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.IOException;
+
+/**
+ * NMEA 0183 feed over TCP or UDP as location source. Fixes are emitted in
+ * client thread.
+ *
+ * @author Timo Vesalainen
+ */
+public class NmeaSource implements LocationSource
+{
+    public static final String TcpName = "nmea_tcp";
+    public static final String UdpName = "nmea_udp";
+    private final Clock clock;
+    private final String host;
+    private final int port;
+    private final boolean udp;
+    private NmeaClient client;
+
+    public NmeaSource(Clock clock, String host, int port, boolean udp)
+    {
+        this.clock = clock;
+        this.host = host;
+        this.port = port;
+        this.udp = udp;
+    }
+
+    @Override
+    public String getName()
+    {
+        return udp ? UdpName : TcpName;
+    }
+
+    @Override
+    public boolean isRealTime()
+    {
+        return true;
+    }
+
+    @Override
+    public synchronized void start(FixSink sink)
+    {
+        client = new NmeaClient(new NmeaParser(clock, sink), host, port, udp);
+        client.start();
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        if (client != null)
+        {
+            try
+            {
+                client.close();
+            }
+            catch (IOException ex)
+            {
+                // channel is abandoned anyway
+            }
+            client = null;
+        }
+    }
+
+    @Override
+    public void setInterval(long millis, double minDistance)
+    {
+    }
+
+}
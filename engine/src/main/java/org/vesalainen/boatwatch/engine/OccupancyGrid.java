@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * Fixed size square grid of dwell times around a center point.
+ *
+ * <p>Time between two fixes is added to the cell of the earlier fix, capped
+ * to max dwell time. Dwell times are quantized to levels on a log2 scale
+ * of seconds, so a cell needs redrawing only when its level changes. Such
+ * cells are collected to dirty list, which is drained by renderer.
+ *
+ * <p>Cell index is row*size+column. Row 0 is the northernmost row.
+ *
+ * @author Timo Vesalainen
+ */
+public class OccupancyGrid
+{
+    public static final int Levels = 16;
+    private static final long MaxDwellMillis = 600000;
+    private final int size;
+    private final double cellSize;
+    private final float[] dwell;
+    private final byte[] level;
+    private final int[] dirty;
+    private final boolean[] isDirty;
+    private int dirtyCount;
+    private boolean allDirty = true;
+    private boolean centered;
+    private double left;
+    private double top;
+    private int lastCell = -1;
+    private long lastTime;
+    private long outside;
+    /**
+     * Creates grid
+     * @param size Number of rows and columns
+     * @param cellSize Cell side length in watch coordinates
+     */
+    public OccupancyGrid(int size, double cellSize)
+    {
+        this.size = size;
+        this.cellSize = cellSize;
+        this.dwell = new float[size*size];
+        this.level = new byte[size*size];
+        this.dirty = new int[size*size];
+        this.isDirty = new boolean[size*size];
+    }
+    /**
+     * Adds fix. First fix centers grid if it is not centered yet.
+     * @param x
+     * @param y
+     * @param time
+     */
+    public void add(double x, double y, long time)
+    {
+        if (!centered)
+        {
+            setCenter(x, y);
+        }
+        if (lastCell != -1 && time > lastTime)
+        {
+            float seconds = Math.min(time - lastTime, MaxDwellMillis)/1000F;
+            dwell[lastCell] += seconds;
+            int l = levelOf(dwell[lastCell]);
+            if (l != level[lastCell])
+            {
+                level[lastCell] = (byte) l;
+                markDirty(lastCell);
+            }
+        }
+        lastCell = cellOf(x, y);
+        lastTime = time;
+        if (lastCell == -1)
+        {
+            outside++;
+        }
+    }
+    /**
+     * Moves grid center to the cell containing given point. Dwell times
+     * are shifted by whole cells. Cells moving outside grid are lost.
+     * @param x
+     * @param y 
+     */
+    public void setCenter(double x, double y)
+    {
+        double half = size*cellSize/2;
+        if (!centered)
+        {
+            left = x - half;
+            top = y + half;
+            centered = true;
+            return;
+        }
+        int dc = (int) Math.floor((x - half - left)/cellSize);
+        int dr = (int) Math.floor((top - y - half)/cellSize);
+        if (dc == 0 && dr == 0)
+        {
+            return;
+        }
+        left += dc*cellSize;
+        top -= dr*cellSize;
+        int cs = dc >= 0 ? 1 : -1;
+        int rs = dr >= 0 ? 1 : -1;
+        for (int ri=0;ri<size;ri++)
+        {
+            int row = rs > 0 ? ri : size-1-ri;
+            for (int ci=0;ci<size;ci++)
+            {
+                int col = cs > 0 ? ci : size-1-ci;
+                int r = row + dr;
+                int c = col + dc;
+                int index = row*size+col;
+                if (r >= 0 && r < size && c >= 0 && c < size)
+                {
+                    dwell[index] = dwell[r*size+c];
+                }
+                else
+                {
+                    dwell[index] = 0;
+                }
+                level[index] = (byte) levelOf(dwell[index]);
+            }
+        }
+        if (lastCell != -1)
+        {
+            int r = lastCell / size - dr;
+            int c = lastCell % size - dc;
+            lastCell = r >= 0 && r < size && c >= 0 && c < size ? r*size+c : -1;
+        }
+        markAllDirty();
+    }
+    /**
+     * Forgets dwell times and center.
+     */
+    public void clear()
+    {
+        for (int ii=0;ii<dwell.length;ii++)
+        {
+            dwell[ii] = 0;
+            level[ii] = 0;
+        }
+        centered = false;
+        lastCell = -1;
+        outside = 0;
+        markAllDirty();
+    }
+    /**
+     * Returns index of cell containing point or -1 if point is outside grid.
+     * @param x
+     * @param y
+     * @return 
+     */
+    public int cellOf(double x, double y)
+    {
+        int col = (int) Math.floor((x - left)/cellSize);
+        int row = (int) Math.floor((top - y)/cellSize);
+        if (row < 0 || row >= size || col < 0 || col >= size)
+        {
+            return -1;
+        }
+        return row*size+col;
+    }
+
+    private static int levelOf(float seconds)
+    {
+        if (seconds <= 0)
+        {
+            return 0;
+        }
+        int l = 1 + Math.getExponent(Math.max(seconds, 1F));
+        return Math.min(l, Levels-1);
+    }
+
+    private void markDirty(int cell)
+    {
+        if (!allDirty && !isDirty[cell])
+        {
+            isDirty[cell] = true;
+            dirty[dirtyCount++] = cell;
+        }
+    }
+
+    private void markAllDirty()
+    {
+        allDirty = true;
+        for (int ii=0;ii<dirtyCount;ii++)
+        {
+            isDirty[dirty[ii]] = false;
+        }
+        dirtyCount = 0;
+    }
+    /**
+     * Returns true if every cell needs redrawing. Cleared by drainDirty.
+     * @return 
+     */
+    public boolean isAllDirty()
+    {
+        return allDirty;
+    }
+    /**
+     * Copies dirty cell indexes to given array and removes them from dirty
+     * list. 
+     * @param cells
+     * @return Number of copied indexes.
+     */
+    public int drainDirty(int[] cells)
+    {
+        allDirty = false;
+        int n = Math.min(cells.length, dirtyCount);
+        for (int ii=0;ii<n;ii++)
+        {
+            int cell = dirty[--dirtyCount];
+            isDirty[cell] = false;
+            cells[ii] = cell;
+        }
+        return n;
+    }
+    /**
+     * Returns dwell level of cell. 0 means no dwell time. Levels-1 is the
+     * maximum.
+     * @param cell
+     * @return 
+     */
+    public int getLevel(int cell)
+    {
+        return level[cell];
+    }
+    /**
+     * Returns dwell time of cell in seconds.
+     * @param cell
+     * @return 
+     */
+    public float getDwell(int cell)
+    {
+        return dwell[cell];
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public double getCellSize()
+    {
+        return cellSize;
+    }
+
+    public boolean isCentered()
+    {
+        return centered;
+    }
+
+    public double getLeft()
+    {
+        return left;
+    }
+
+    public double getTop()
+    {
+        return top;
+    }
+
+    public double getCenterX()
+    {
+        return left + size*cellSize/2;
+    }
+
+    public double getCenterY()
+    {
+        return top - size*cellSize/2;
+    }
+    /**
+     * Returns number of fixes outside grid.
+     * @return 
+     */
+    public long getOutside()
+    {
+        return outside;
+    }
+
+}
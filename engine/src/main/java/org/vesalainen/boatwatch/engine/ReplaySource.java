@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.File;
+import java.io.IOException;
+import org.vesalainen.boatwatch.engine.DeadlineScheduler.Deadline;
+
+/**
+ * Replays track file in real time. Fix times are shifted so that first fix
+ * is at start time. Fixes are emitted in scheduler thread. Replay stops at
+ * the end of file.
+ *
+ * @author Timo Vesalainen
+ */
+public class ReplaySource implements LocationSource, FixSink
+{
+    public static final String Name = "replay";
+    private final Clock clock;
+    private final Deadline tick;
+    private File file;
+    private FixSink sink;
+    private TrackReader reader;
+    private long offset;
+    private boolean held;
+    private long time;
+    private double longitude;
+    private double latitude;
+    private double accuracy;
+    private double speed;
+
+    public ReplaySource(DeadlineScheduler scheduler)
+    {
+        this.clock = scheduler.getClock();
+        this.tick = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        });
+    }
+    /**
+     * Sets file replayed by next start.
+     * @param file 
+     */
+    public synchronized void setFile(File file)
+    {
+        this.file = file;
+    }
+
+    @Override
+    public String getName()
+    {
+        return Name;
+    }
+
+    @Override
+    public boolean isRealTime()
+    {
+        return false;
+    }
+
+    @Override
+    public synchronized void start(FixSink sink) throws IOException
+    {
+        if (file == null)
+        {
+            throw new IOException("no track file to replay");
+        }
+        this.sink = sink;
+        reader = new TrackReader(file);
+        held = false;
+        reader.read(this, 1);
+        if (!held)
+        {
+            close();
+            throw new IOException(file+" is empty");
+        }
+        offset = clock.millis() - time;
+        tick.arm(0);
+    }
+
+    @Override
+    public synchronized void stop()
+    {
+        tick.cancel();
+        close();
+    }
+
+    private synchronized void tick()
+    {
+        if (reader == null)
+        {
+            return;
+        }
+        sink.fix(time+offset, longitude, latitude, accuracy, speed);
+        held = false;
+        try
+        {
+            reader.read(this, 1);
+        }
+        catch (IOException ex)
+        {
+            held = false;
+        }
+        if (held)
+        {
+            tick.arm(Math.max(0, time + offset - clock.millis()));
+        }
+        else
+        {
+            close();
+        }
+    }
+
+    private void close()
+    {
+        if (reader != null)
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException ex)
+            {
+                // nothing to do with read-only file
+            }
+            reader = null;
+        }
+    }
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        this.time = time;
+        this.longitude = longitude;
+        this.latitude = latitude;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        held = true;
+    }
+
+    @Override
+    public void setInterval(long millis, double minDistance)
+    {
+    }
+
+}
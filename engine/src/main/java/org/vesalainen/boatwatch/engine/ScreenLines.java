@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Arrays;
+
+/**
+ * Screen projected line arrays of anchor view shapes in Canvas.drawLines
+ * format. Polygon and path are projected again only after transform change
+ * or invalidate. Track is projected incrementally through LineSimplifier,
+ * so that only fixes added after last update are projected.
+ *
+ * <p>Transform is affine: screen x = originX + x*scaleX and screen y =
+ * originY + y*scaleY. Arrays are reused and grow only with shapes, so
+ * projecting a frame doesn't allocate.
+ *
+ * @author Timo Vesalainen
+ */
+public class ScreenLines
+{
+    private final LineSimplifier simplifier = new LineSimplifier();
+    private final float tolerance;
+    private double originX = Double.NaN;
+    private double originY = Double.NaN;
+    private double scaleX = Double.NaN;
+    private double scaleY = Double.NaN;
+    private int width;
+    private int height;
+    private float[] polygonLines = new float[128];
+    private int polygonLength;
+    private boolean polygonDirty = true;
+    private float[] pathLines = new float[128];
+    private int pathLength;
+    private boolean pathDirty = true;
+    private float[] trackLines = new float[128];
+    private int trackLength;
+    private int trackCount;
+    private int trackGeneration;
+    private boolean trackDirty = true;
+    /**
+     * Creates ScreenLines.
+     * @param tolerance Track simplification tolerance in pixels.
+     */
+    public ScreenLines(float tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+    /**
+     * Sets world to screen transform. All shapes are invalidated if
+     * transform or screen size has changed.
+     * @param originX Screen x of world x 0
+     * @param scaleX Screen pixels per world unit in x
+     * @param originY Screen y of world y 0
+     * @param scaleY Screen pixels per world unit in y. Negative if y grows 
+     * upwards.
+     * @param width Screen width
+     * @param height Screen height
+     * @return true if transform has changed.
+     */
+    public boolean setTransform(double originX, double scaleX, double originY, double scaleY, int width, int height)
+    {
+        if (
+                originX != this.originX || 
+                originY != this.originY || 
+                scaleX != this.scaleX || 
+                scaleY != this.scaleY || 
+                width != this.width || 
+                height != this.height
+                )
+        {
+            this.originX = originX;
+            this.originY = originY;
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.width = width;
+            this.height = height;
+            invalidate();
+            return true;
+        }
+        return false;
+    }
+    /**
+     * Invalidates projected polygon, path and track.
+     */
+    public void invalidate()
+    {
+        polygonDirty = true;
+        pathDirty = true;
+        trackDirty = true;
+    }
+    /**
+     * Invalidates projected polygon and path.
+     */
+    public void polygonChanged()
+    {
+        polygonDirty = true;
+        pathDirty = true;
+    }
+    /**
+     * Projects closed polygon if it was invalidated.
+     * @param d Points as x,y pairs
+     * @param rows Number of points
+     * @return Number of floats in polygon lines
+     */
+    public int projectPolygon(double[] d, int rows)
+    {
+        if (polygonDirty)
+        {
+            polygonLines = ensure(polygonLines, 4*rows);
+            polygonLength = project(d, rows, true, polygonLines);
+            polygonDirty = false;
+        }
+        return polygonLength;
+    }
+
+    public float[] getPolygonLines()
+    {
+        return polygonLines;
+    }
+    /**
+     * Projects open path if it was invalidated.
+     * @param d Points as x,y pairs
+     * @param rows Number of points
+     * @return Number of floats in path lines
+     */
+    public int projectPath(double[] d, int rows)
+    {
+        if (pathDirty)
+        {
+            pathLines = ensure(pathLines, 4*rows);
+            pathLength = project(d, rows, false, pathLines);
+            pathDirty = false;
+        }
+        return pathLength;
+    }
+
+    public float[] getPathLines()
+    {
+        return pathLines;
+    }
+    /**
+     * Returns true if next updateTrack projects the whole track again
+     * because transform has changed or track was thinned or cleared.
+     * @param store
+     * @return 
+     */
+    public boolean isTrackReset(TrackStore store)
+    {
+        return trackDirty || store.getGeneration() != trackGeneration || store.size() < trackCount;
+    }
+    /**
+     * Projects fixes added to store after last call. Whole track is
+     * projected again if isTrackReset returns true.
+     * @param store
+     * @return Index of first new float in track lines. 0 if whole track was
+     * projected.
+     */
+    public int updateTrack(TrackStore store)
+    {
+        int size = store.size();
+        if (isTrackReset(store))
+        {
+            trackLength = 0;
+            trackCount = 0;
+            trackGeneration = store.getGeneration();
+            trackDirty = false;
+            simplifier.reset(0, 0, width, height, tolerance);
+        }
+        int from = trackLength;
+        double[] xs = store.getXView();
+        double[] ys = store.getYView();
+        trackLines = ensure(trackLines, trackLength + 4*(size - trackCount));
+        for (int ii=trackCount;ii<size;ii++)
+        {
+            trackLength = simplifier.add(screenX(xs[ii]), screenY(ys[ii]), trackLines, trackLength);
+        }
+        trackCount = size;
+        return from;
+    }
+
+    public float[] getTrackLines()
+    {
+        return trackLines;
+    }
+
+    public int getTrackLength()
+    {
+        return trackLength;
+    }
+
+    private float screenX(double x)
+    {
+        return (float) (originX + x*scaleX);
+    }
+
+    private float screenY(double y)
+    {
+        return (float) (originY + y*scaleY);
+    }
+    /**
+     * Projects points to line segments in drawLines format.
+     * @param d Points as x,y pairs
+     * @param rows Number of points
+     * @param closed If true, last point is connected to first.
+     * @param lines
+     * @return Number of floats in lines
+     */
+    private int project(double[] d, int rows, boolean closed, float[] lines)
+    {
+        if (rows < 2)
+        {
+            return 0;
+        }
+        int len = 0;
+        int start = closed ? 0 : 1;
+        float x1 = screenX(d[closed ? 2 * (rows - 1) : 0]);
+        float y1 = screenY(d[closed ? 2 * (rows - 1) + 1 : 1]);
+        for (int r = start; r < rows; r++)
+        {
+            float x2 = screenX(d[2 * r]);
+            float y2 = screenY(d[2 * r + 1]);
+            lines[len++] = x1;
+            lines[len++] = y1;
+            lines[len++] = x2;
+            lines[len++] = y2;
+            x1 = x2;
+            y1 = y2;
+        }
+        return len;
+    }
+
+    private float[] ensure(float[] arr, int len)
+    {
+        if (arr.length < len)
+        {
+            return Arrays.copyOf(arr, Math.max(len, 2*arr.length));
+        }
+        return arr;
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * Binds settings to setter methods without reflection. Binder is a static
+ * constant of the bound class. It lists the keys of @Setting methods and
+ * calls the method of a key with typed value from SettingsSnapshot.
+ *
+ * @author Timo Vesalainen
+ * @param <T> Bound type
+ */
+public abstract class SettingBinder<T>
+{
+    private final String[] keys;
+
+    protected SettingBinder(String... keys)
+    {
+        this.keys = keys;
+    }
+    /**
+     * Calls setter of given key.
+     * @param target
+     * @param key
+     * @param settings 
+     */
+    public abstract void bind(T target, String key, SettingsSnapshot settings);
+    /**
+     * Calls setters of all keys that have value.
+     * @param target
+     * @param settings 
+     */
+    public void bindAll(T target, SettingsSnapshot settings)
+    {
+        for (String key : keys)
+        {
+            if (settings.contains(key))
+            {
+                bind(target, key, settings);
+            }
+        }
+    }
+    /**
+     * Returns true if binder has setter for key.
+     * @param key
+     * @return 
+     */
+    public boolean handles(String key)
+    {
+        for (String k : keys)
+        {
+            if (k.equals(key))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String[] getKeys()
+    {
+        return keys.clone();
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of settings. Snapshot is built once from preference
+ * map. Changing a value creates a new snapshot, old snapshots stay valid
+ * for readers in other threads.
+ *
+ * <p>Typed getters convert values that preferences store as strings, like
+ * list preference values.
+ *
+ * @author Timo Vesalainen
+ */
+public final class SettingsSnapshot
+{
+    private static final SettingsSnapshot Empty = new SettingsSnapshot(new HashMap<String,Object>(), 0);
+    private final Map<String,Object> map;
+    private final long version;
+
+    private SettingsSnapshot(Map<String,Object> map, long version)
+    {
+        this.map = map;
+        this.version = version;
+    }
+    /**
+     * Returns snapshot of empty settings.
+     * @return 
+     */
+    public static SettingsSnapshot empty()
+    {
+        return Empty;
+    }
+    /**
+     * Creates snapshot of given map. Map is copied.
+     * @param all
+     * @return 
+     */
+    public static SettingsSnapshot of(Map<String,?> all)
+    {
+        return new SettingsSnapshot(new HashMap<String,Object>(all), 0);
+    }
+    /**
+     * Returns snapshot where key has value. Null value removes key.
+     * @param key
+     * @param value
+     * @return This if value is unchanged.
+     */
+    public SettingsSnapshot with(String key, Object value)
+    {
+        if (equal(map.get(key), value))
+        {
+            return this;
+        }
+        Map<String,Object> m = new HashMap<>(map);
+        if (value != null)
+        {
+            m.put(key, value);
+        }
+        else
+        {
+            m.remove(key);
+        }
+        return new SettingsSnapshot(m, version+1);
+    }
+    /**
+     * Returns snapshot of given map with version following this. Keys whose
+     * value differs from this are added to changed.
+     * @param all
+     * @param changed
+     * @return This if nothing changed.
+     */
+    public SettingsSnapshot update(Map<String,?> all, Collection<String> changed)
+    {
+        SettingsSnapshot snapshot = new SettingsSnapshot(new HashMap<String,Object>(all), version+1);
+        return diff(snapshot, changed) ? snapshot : this;
+    }
+    /**
+     * Adds keys whose values differ in this and other to changed.
+     * @param other
+     * @param changed
+     * @return true if some key differed.
+     */
+    public boolean diff(SettingsSnapshot other, Collection<String> changed)
+    {
+        boolean differs = false;
+        for (Map.Entry<String,Object> e : map.entrySet())
+        {
+            if (!equal(e.getValue(), other.map.get(e.getKey())))
+            {
+                changed.add(e.getKey());
+                differs = true;
+            }
+        }
+        for (String key : other.map.keySet())
+        {
+            if (!map.containsKey(key))
+            {
+                changed.add(key);
+                differs = true;
+            }
+        }
+        return differs;
+    }
+
+    private static boolean equal(Object o1, Object o2)
+    {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    public Object get(String key)
+    {
+        return map.get(key);
+    }
+
+    public boolean contains(String key)
+    {
+        return map.containsKey(key);
+    }
+
+    public String getString(String key, String def)
+    {
+        Object value = map.get(key);
+        return value != null ? value.toString() : def;
+    }
+
+    public boolean getBoolean(String key, boolean def)
+    {
+        Object value = map.get(key);
+        if (value instanceof Boolean)
+        {
+            return (Boolean) value;
+        }
+        if (value instanceof String)
+        {
+            return Boolean.parseBoolean((String) value);
+        }
+        return def;
+    }
+
+    public int getInt(String key, int def)
+    {
+        return (int) getLong(key, def);
+    }
+
+    public long getLong(String key, long def)
+    {
+        Object value = map.get(key);
+        if (value instanceof Number)
+        {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String)
+        {
+            try
+            {
+                return Long.parseLong(((String) value).trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                return def;
+            }
+        }
+        return def;
+    }
+
+    public double getDouble(String key, double def)
+    {
+        Object value = map.get(key);
+        if (value instanceof Number)
+        {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof String)
+        {
+            try
+            {
+                return Double.parseDouble(((String) value).trim());
+            }
+            catch (NumberFormatException ex)
+            {
+                return def;
+            }
+        }
+        return def;
+    }
+    /**
+     * Returns unmodifiable view of all settings.
+     * @return 
+     */
+    public Map<String,Object> asMap()
+    {
+        return Collections.unmodifiableMap(map);
+    }
+    /**
+     * Returns number of changes since snapshot was built from preferences.
+     * @return 
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SettingsSnapshot{" + "version=" + version + ", size=" + map.size() + '}';
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import org.vesalainen.boatwatch.engine.DeadlineScheduler.Deadline;
+
+/**
+ * Collects changed setting keys and applies them together after changes
+ * have settled.
+ *
+ * <p>Each change re-arms debounce deadline, but a transaction is never
+ * delayed more than four debounce times from its first change. When the
+ * deadline expires, changed keys and the latest snapshot are passed to
+ * applier in executor thread as one call.
+ *
+ * @author Timo Vesalainen
+ */
+public class SettingsTransaction
+{
+    private final Clock clock;
+    private final Deadline deadline;
+    private final Executor executor;
+    private final Applier applier;
+    private final long debounceMillis;
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final List<String> keys = new ArrayList<>();
+    private SettingsSnapshot settings = SettingsSnapshot.empty();
+    private long firstChange;
+    private long changes;
+    private long transactions;
+    private final Runnable commit = new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            commit();
+        }
+    };
+    /**
+     * Creates transaction.
+     * @param scheduler Scheduler for debounce deadline
+     * @param executor Executor where applier is called
+     * @param debounceMillis Quiet time before changes are applied
+     * @param applier 
+     */
+    public SettingsTransaction(DeadlineScheduler scheduler, Executor executor, long debounceMillis, Applier applier)
+    {
+        this.clock = scheduler.getClock();
+        this.executor = executor;
+        this.debounceMillis = debounceMillis;
+        this.applier = applier;
+        this.deadline = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                SettingsTransaction.this.executor.execute(commit);
+            }
+        });
+    }
+    /**
+     * Adds changed key to transaction. Can be called from any thread.
+     * @param key
+     * @param settings Snapshot having the changed value
+     */
+    public synchronized void changed(String key, SettingsSnapshot settings)
+    {
+        long now = clock.millis();
+        if (pending.isEmpty())
+        {
+            firstChange = now;
+        }
+        pending.add(key);
+        this.settings = settings;
+        changes++;
+        deadline.arm(Math.max(0, Math.min(debounceMillis, firstChange + 4*debounceMillis - now)));
+    }
+    /**
+     * Applies pending changes. Called in executor thread.
+     */
+    public void commit()
+    {
+        SettingsSnapshot s;
+        synchronized (this)
+        {
+            if (pending.isEmpty())
+            {
+                return;
+            }
+            keys.addAll(pending);
+            pending.clear();
+            s = settings;
+            transactions++;
+        }
+        try
+        {
+            applier.apply(s, keys);
+        }
+        finally
+        {
+            keys.clear();
+        }
+    }
+    /**
+     * Returns number of changed keys.
+     * @return 
+     */
+    public synchronized long getChanges()
+    {
+        return changes;
+    }
+    /**
+     * Returns number of applied transactions.
+     * @return 
+     */
+    public synchronized long getTransactions()
+    {
+        return transactions;
+    }
+
+    public interface Applier
+    {
+        /**
+         * Applies changed keys.
+         * @param settings Latest settings
+         * @param keys Changed keys in change order
+         */
+        void apply(SettingsSnapshot settings, Collection<String> keys);
+    }
+}
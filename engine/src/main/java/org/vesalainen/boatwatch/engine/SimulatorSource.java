@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import org.vesalainen.boatwatch.engine.DeadlineScheduler.Deadline;
+
+/**
+ * SwingSimulator as location source. Fixes are emitted in scheduler thread
+ * without accuracy, so that they always pass accuracy gate.
+ *
+ * @author Timo Vesalainen
+ */
+public class SimulatorSource implements LocationSource
+{
+    public static final String Name = "simulator";
+    private final Clock clock;
+    private final long period;
+    private final Deadline tick;
+    private volatile SwingSimulator simulator;
+
+    public SimulatorSource(DeadlineScheduler scheduler, long period)
+    {
+        this.clock = scheduler.getClock();
+        this.period = period;
+        this.tick = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                SwingSimulator sim = simulator;
+                if (sim != null)
+                {
+                    sim.step();
+                    tick.arm(SimulatorSource.this.period);
+                }
+            }
+        });
+    }
+
+    @Override
+    public String getName()
+    {
+        return Name;
+    }
+
+    @Override
+    public boolean isRealTime()
+    {
+        return false;
+    }
+
+    @Override
+    public void start(FixSink sink)
+    {
+        SwingSimulator sim = new SwingSimulator(clock, sink, clock.millis());
+        simulator = sim;
+        tick.arm(0);
+    }
+
+    @Override
+    public void stop()
+    {
+        simulator = null;
+        tick.cancel();
+    }
+
+    @Override
+    public void setInterval(long millis, double minDistance)
+    {
+    }
+
+}
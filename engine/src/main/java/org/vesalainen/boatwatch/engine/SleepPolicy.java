@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import org.vesalainen.math.Circle;
+import org.vesalainen.navi.AnchorWatch;
+import org.vesalainen.navi.SafeSector;
+import org.vesalainen.util.navi.Angle;
+
+/**
+ * Decides GPS sleep time.
+ *
+ * <p>When safe sector is known, sleep time is time-to-breach: conservative
+ * distance from boat to safe sector boundary, less location accuracy,
+ * divided by worst-case drag speed. Otherwise sleep time is the one
+ * suggested by AnchorWatch. Sleep time is never longer than max sleep.
+ *
+ * <p>Sleep is shortened as soon as time-to-breach drops below it and
+ * lengthened only when time-to-breach has grown by hysteresis. Both use
+ * time-to-breach reduced by hysteresis, so that registered sleep never
+ * exceeds time-to-breach.
+ *
+ * @author Timo Vesalainen
+ */
+public class SleepPolicy
+{
+    private long maxSleepMillis;
+    private long sleepMillis;
+    private double dragSpeed = 1.0;
+    private double hysteresis = 0.25;
+    private double suggestedSeconds = Double.NaN;
+    private boolean hasLocation;
+    private double x;
+    private double y;
+    private double accuracy;
+    private long lastTime;
+    private boolean hasSector;
+    private boolean circle;
+    private double sectorX;
+    private double sectorY;
+    private double sectorRadius;
+    private double leftAngle;
+    private double rightAngle;
+    private double innerX;
+    private double innerY;
+    private double innerRadius;
+    private long fixes;
+    private double expectedFixes;
+    private long registrations;
+    /**
+     * Stores AnchorWatch suggestion.
+     * @param seconds Suggested seconds from Watcher.suggestNextUpdateIn
+     * @return true if sleep time changed so that location updates should be
+     * re-requested with getSleepMillis()
+     */
+    public boolean suggest(double seconds)
+    {
+        suggestedSeconds = seconds;
+        return evaluate();
+    }
+    /**
+     * Updates boat location and fix counters.
+     * @param x
+     * @param y
+     * @param time
+     * @param accuracy Accuracy in meters or NaN
+     * @return true if sleep time changed so that location updates should be
+     * re-requested with getSleepMillis()
+     */
+    public boolean location(double x, double y, long time, double accuracy)
+    {
+        if (hasLocation && time > lastTime)
+        {
+            expectedFixes += (double)(time - lastTime) / Math.max(sleepMillis, 1000);
+        }
+        fixes++;
+        lastTime = time;
+        hasLocation = true;
+        this.x = x;
+        this.y = y;
+        this.accuracy = Double.isNaN(accuracy) ? 0 : accuracy;
+        return evaluate();
+    }
+    /**
+     * Updates safe sector.
+     * @param safe
+     * @return true if sleep time changed so that location updates should be
+     * re-requested with getSleepMillis()
+     */
+    public boolean safeSector(SafeSector safe)
+    {
+        Circle inner = safe.getInnerCircle();
+        return safeSector(
+                safe.isCircle(), 
+                safe.getX(), 
+                safe.getY(), 
+                safe.getRadius(), 
+                safe.getLeftAngle(), 
+                safe.getRightAngle(), 
+                inner.getX(), 
+                inner.getY(), 
+                inner.getRadius()
+        );
+    }
+
+    boolean safeSector(boolean circle, double x, double y, double radius, double leftAngle, double rightAngle, double innerX, double innerY, double innerRadius)
+    {
+        hasSector = true;
+        this.circle = circle;
+        sectorX = x;
+        sectorY = y;
+        sectorRadius = radius;
+        this.leftAngle = leftAngle;
+        this.rightAngle = rightAngle;
+        this.innerX = innerX;
+        this.innerY = innerY;
+        this.innerRadius = innerRadius;
+        return evaluate();
+    }
+    /**
+     * Re-evaluates sleep time after max sleep or drag speed change.
+     * @return true if sleep time changed so that location updates should be
+     * re-requested with getSleepMillis()
+     */
+    public boolean reevaluate()
+    {
+        return evaluate();
+    }
+    /**
+     * Forgets location and safe sector.
+     */
+    public void reset()
+    {
+        hasLocation = false;
+        hasSector = false;
+        suggestedSeconds = Double.NaN;
+    }
+
+    private boolean evaluate()
+    {
+        double seconds;
+        boolean breach = hasSector && hasLocation;
+        if (breach)
+        {
+            seconds = timeToBreach();
+        }
+        else
+        {
+            seconds = suggestedSeconds;
+        }
+        long millis = clamp(seconds);
+        if (breach)
+        {
+            long target = (long) (millis*(1-hysteresis));
+            if (millis < sleepMillis || target > sleepMillis*(1+hysteresis) && target - sleepMillis > 1000)
+            {
+                return set(target);
+            }
+        }
+        else
+        {
+            if (millis < sleepMillis || millis - sleepMillis > 1000)
+            {
+                return set(millis);
+            }
+        }
+        return false;
+    }
+
+    private boolean set(long millis)
+    {
+        if (millis != sleepMillis)
+        {
+            sleepMillis = millis;
+            registrations++;
+            return true;
+        }
+        return false;
+    }
+
+    private long clamp(double seconds)
+    {
+        long millis = (long) (seconds*1000);
+        if (Double.isNaN(seconds) || seconds < 1.0)
+        {
+            millis = 0;
+        }
+        else
+        {
+            if (Double.isInfinite(seconds) || millis > maxSleepMillis)
+            {
+                millis = maxSleepMillis;
+            }
+        }
+        return millis;
+    }
+    /**
+     * Returns conservative time in seconds for boat to leave safe sector
+     * when dragging at drag speed.
+     * @return
+     */
+    public double timeToBreach()
+    {
+        double margin = AnchorWatch.toMeters(margin()) - accuracy;
+        return Math.max(0, margin) / dragSpeed;
+    }
+    /**
+     * Returns lower bound of distance in meters from last location to safe
+     * sector boundary. Boat within this distance from last location is
+     * inside safe sector.
+     * @return Distance, 0 or negative if location is not known or is outside
+     * safe sector, infinite if safe sector is not known.
+     */
+    public double getMargin()
+    {
+        if (!hasSector)
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (!hasLocation)
+        {
+            return 0;
+        }
+        return AnchorWatch.toMeters(margin());
+    }
+    /**
+     * Returns lower bound of distance from boat to safe sector boundary, or
+     * zero or negative if boat is outside safe sector.
+     *
+     * <p>Safe sector is the wedge from left angle clockwise to right angle,
+     * angles counterclockwise from east, together with inner circle. Radial
+     * edges are handled as lines through sector center.
+     * @return
+     */
+    private double margin()
+    {
+        double dx = x - sectorX;
+        double dy = y - sectorY;
+        double m = sectorRadius - Math.hypot(dx, dy);
+        if (!circle)
+        {
+            double inner = innerRadius - Math.hypot(x - innerX, y - innerY);
+            double wedge = Angle.normalizeToFullAngle(leftAngle - rightAngle);
+            double angle = Angle.normalizeToFullAngle(leftAngle - Math.atan2(dy, dx));
+            if (angle > wedge)
+            {
+                return inner;
+            }
+            m = Math.min(m, Math.abs(dx*Math.sin(leftAngle) - dy*Math.cos(leftAngle)));
+            m = Math.min(m, Math.abs(dx*Math.sin(rightAngle) - dy*Math.cos(rightAngle)));
+            m = Math.max(m, inner);
+        }
+        return m;
+    }
+
+    public long getSleepMillis()
+    {
+        return sleepMillis;
+    }
+
+    public void setMaxSleepMillis(long maxSleepMillis)
+    {
+        this.maxSleepMillis = maxSleepMillis;
+    }
+
+    public long getMaxSleepMillis()
+    {
+        return maxSleepMillis;
+    }
+    /**
+     * Sets worst-case drag speed.
+     * @param dragSpeed Speed in m/s
+     */
+    public void setDragSpeed(double dragSpeed)
+    {
+        if (dragSpeed <= 0)
+        {
+            throw new IllegalArgumentException("drag speed "+dragSpeed+" <= 0");
+        }
+        this.dragSpeed = dragSpeed;
+    }
+
+    public double getDragSpeed()
+    {
+        return dragSpeed;
+    }
+
+    public void setHysteresis(double hysteresis)
+    {
+        this.hysteresis = hysteresis;
+    }
+    /**
+     * Returns number of fixes received.
+     * @return
+     */
+    public long getFixes()
+    {
+        return fixes;
+    }
+    /**
+     * Returns number of fixes that were expected with sleep times in effect.
+     * @return
+     */
+    public double getExpectedFixes()
+    {
+        return expectedFixes;
+    }
+    /**
+     * Returns number of sleep time changes.
+     * @return
+     */
+    public long getRegistrations()
+    {
+        return registrations;
+    }
+
+}
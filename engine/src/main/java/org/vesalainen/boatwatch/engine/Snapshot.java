@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+/**
+ * AnchorWatch state in primitive form. Track holds accepted fixes in
+ * TrackStore, thinned as anchorage goes on. Watch is restored by replaying
+ * the track. Area, estimate and safe sector are not stored, because replay
+ * makes AnchorWatch compute them again.
+ *
+ * @author Timo Vesalainen
+ * @see SnapshotCodec
+ */
+public class Snapshot
+{
+    final TrackStore track;
+
+    public Snapshot(int trackCapacity)
+    {
+        this.track = new TrackStore(trackCapacity);
+    }
+
+    public void clear()
+    {
+        track.clear();
+    }
+    /**
+     * Adds accepted fix to track.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy
+     * @param speed
+     */
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        track.add(time, longitude, latitude, accuracy, speed);
+    }
+    /**
+     * Marks anchor as set after latest fix.
+     */
+    public void anchorSet()
+    {
+        track.mark();
+    }
+
+    /**
+     * Replays track to replayer. Anchor set is replayed after the fix it
+     * followed.
+     * @param replayer
+     */
+    public void replay(TrackJournal.Replayer replayer)
+    {
+        int count = track.size();
+        long[] time = track.getTimeView();
+        double[] longitude = track.getXView();
+        double[] latitude = track.getYView();
+        float[] accuracy = track.getAccuracyView();
+        float[] speed = track.getSpeedView();
+        byte[] flags = track.getFlagsView();
+        for (int ii=0;ii<count;ii++)
+        {
+            replayer.fix(time[ii], longitude[ii], latitude[ii], accuracy[ii], speed[ii]);
+            if ((flags[ii] & TrackStore.Marked) != 0)
+            {
+                replayer.anchorSet(time[ii]);
+            }
+        }
+    }
+
+    public int getTrackCount()
+    {
+        return track.size();
+    }
+    /**
+     * Returns track with longitude as x and latitude as y.
+     * @return 
+     */
+    public TrackStore getTrack()
+    {
+        return track;
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary format for Snapshot.
+ *
+ * <p>Format is magic, version, length and a list of sections followed by
+ * CRC32 of everything before it. Each section is tag byte, payload length
+ * and payload. Unknown sections are skipped so that later versions can add
+ * sections without breaking older readers.
+ *
+ * <p>Version 1 also had area, estimate and safe sector sections. They are
+ * skipped, because replaying the track recomputes them.
+ *
+ * @author Timo Vesalainen
+ */
+public class SnapshotCodec
+{
+    private static final int Magic = 0x41575353;    // AWSS
+    private static final short Version = 2;
+    private static final int HeaderSize = 4+2+4;
+    private static final byte End = 0;
+    private static final byte Anchor = 1;
+    private static final byte Track = 5;
+    private static final int SectionHeaderSize = 1+4;
+    private static final int FixSize = 8+8+8+4+4;
+
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    /**
+     * Returns encoded size of snapshot.
+     * @param snapshot
+     * @return
+     */
+    public static int size(Snapshot snapshot)
+    {
+        return HeaderSize
+                + SectionHeaderSize + 4
+                + SectionHeaderSize + 4 + FixSize*snapshot.track.size()
+                + 1
+                + 4;
+    }
+    /**
+     * Encodes snapshot to buffer. Buffer has to be heap buffer with enough
+     * space remaining.
+     * @param snapshot
+     * @param bb
+     */
+    public void encode(Snapshot snapshot, ByteBuffer bb)
+    {
+        int start = bb.position();
+        bb.putInt(Magic);
+        bb.putShort(Version);
+        bb.putInt(size(snapshot));
+
+        TrackStore track = snapshot.track;
+        section(bb, Anchor, 4);
+        bb.putInt(track.getLastMarked());
+
+        int count = track.size();
+        long[] time = track.getTimeView();
+        double[] longitude = track.getXView();
+        double[] latitude = track.getYView();
+        float[] accuracy = track.getAccuracyView();
+        float[] speed = track.getSpeedView();
+        section(bb, Track, 4 + FixSize*count);
+        bb.putInt(count);
+        for (int ii=0;ii<count;ii++)
+        {
+            bb.putLong(time[ii]);
+            bb.putDouble(longitude[ii]);
+            bb.putDouble(latitude[ii]);
+            bb.putFloat(accuracy[ii]);
+            bb.putFloat(speed[ii]);
+        }
+
+        bb.put(End);
+        crc.reset();
+        crc.update(bb.array(), bb.arrayOffset()+start, bb.position()-start);
+        bb.putInt((int) crc.getValue());
+    }
+
+    private void section(ByteBuffer bb, byte tag, int length)
+    {
+        bb.put(tag);
+        bb.putInt(length);
+    }
+    /**
+     * Decodes snapshot from heap buffer.
+     * @param bb
+     * @param snapshot
+     * @throws IOException If data is corrupted or version is not supported.
+     * Snapshot content is undefined in that case.
+     */
+    public void decode(ByteBuffer bb, Snapshot snapshot) throws IOException
+    {
+        int start = bb.position();
+        need(bb, HeaderSize);
+        if (bb.getInt() != Magic)
+        {
+            throw new IOException("not a snapshot");
+        }
+        short version = bb.getShort();
+        if (version < 1 || version > Version)
+        {
+            throw new IOException("unsupported snapshot version "+version);
+        }
+        int length = bb.getInt();
+        if (length < HeaderSize+5 || length > bb.limit()-start)
+        {
+            throw new IOException("corrupted snapshot length "+length);
+        }
+        int end = start+length-4;
+        crc.reset();
+        crc.update(bb.array(), bb.arrayOffset()+start, length-4);
+        if (bb.getInt(end) != (int) crc.getValue())
+        {
+            throw new IOException("snapshot crc mismatch");
+        }
+        snapshot.clear();
+        int anchorIndex = -1;
+        bb.limit(end);
+        while (true)
+        {
+            need(bb, 1);
+            byte tag = bb.get();
+            if (tag == End)
+            {
+                break;
+            }
+            need(bb, 4);
+            int len = bb.getInt();
+            if (len < 0)
+            {
+                throw new IOException("corrupted section length "+len);
+            }
+            need(bb, len);
+            int next = bb.position()+len;
+            switch (tag)
+            {
+                case Anchor:
+                    need(len, 4);
+                    anchorIndex = bb.getInt();
+                    break;
+                case Track:
+                {
+                    need(len, 4);
+                    int count = bb.getInt();
+                    if (count < 0 || len != 4 + (long)FixSize*count)
+                    {
+                        throw new IOException("corrupted track count "+count);
+                    }
+                    TrackStore track = snapshot.track;
+                    for (int ii=0;ii<count;ii++)
+                    {
+                        track.add(bb.getLong(), bb.getDouble(), bb.getDouble(), bb.getFloat(), bb.getFloat());
+                        if (ii == anchorIndex)
+                        {
+                            track.mark();
+                        }
+                    }
+                }
+                    break;
+            }
+            bb.position(next);
+        }
+        bb.limit(end+4);
+        bb.position(end+4);
+    }
+
+    private static void need(ByteBuffer bb, int len) throws IOException
+    {
+        if (bb.remaining() < len)
+        {
+            throw new IOException("snapshot truncated");
+        }
+    }
+
+    private static void need(int len, int min) throws IOException
+    {
+        if (len < min)
+        {
+            throw new IOException("corrupted section length "+len);
+        }
+    }
+    /**
+     * Writes snapshot to file. File is first written to a temporary file
+     * which is then renamed.
+     * @param snapshot
+     * @param file
+     * @throws IOException
+     */
+    public void write(Snapshot snapshot, File file) throws IOException
+    {
+        ensure(size(snapshot));
+        buffer.clear();
+        encode(snapshot, buffer);
+        buffer.flip();
+        File tmp = new File(file.getPath()+".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp))
+        {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file))
+        {
+            throw new IOException("couldn't rename "+tmp+" to "+file);
+        }
+    }
+    /**
+     * Reads snapshot from file.
+     * @param file
+     * @param snapshot
+     * @throws IOException
+     */
+    public void read(File file, Snapshot snapshot) throws IOException
+    {
+        try (FileInputStream in = new FileInputStream(file))
+        {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new IOException(file+" too big");
+            }
+            ensure((int) size);
+            buffer.clear();
+            buffer.limit((int) size);
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer) < 0)
+                {
+                    throw new IOException(file+" truncated");
+                }
+            }
+            buffer.flip();
+            decode(buffer, snapshot);
+        }
+    }
+
+    private void ensure(int size)
+    {
+        if (buffer.capacity() < size)
+        {
+            buffer = ByteBuffer.allocate(Math.max(size, 2*buffer.capacity()));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Random;
+
+/**
+ * Simulates a boat swinging at anchor. Boat lies downwind from anchor at rode
+ * length and swings sinusoidally around wind direction. Anchor starts
+ * dragging downwind at drag start time.
+ *
+ * <p>Simulator doesn't schedule itself. Each step() emits one fix at clock
+ * time, so that same simulator can be run by real or virtual clock.
+ *
+ * @author Timo Vesalainen
+ */
+public class SwingSimulator
+{
+    private static final double DegreeMeters = 60*1852;
+    private final Clock clock;
+    private final FixSink sink;
+    private final Random random;
+    private double anchorLongitude = 25.0;
+    private double anchorLatitude = 60.0;
+    private double rode = 30;
+    private double windDirection = Math.toRadians(225);
+    private double swingAmplitude = Math.toRadians(40);
+    private long swingPeriod = 600000;
+    private double noise = 3;
+    private double accuracy = 5;
+    private long dragStart = Long.MAX_VALUE;
+    private double dragSpeed = 0.5;
+    private long outagePeriod;
+    private long outageLength;
+    private double outageAccuracy;
+    private long startTime;
+    private long steps;
+
+    public SwingSimulator(Clock clock, FixSink sink, long seed)
+    {
+        this.clock = clock;
+        this.sink = sink;
+        this.random = new Random(seed);
+        this.startTime = clock.millis();
+    }
+    /**
+     * Emits one fix at current clock time.
+     */
+    public void step()
+    {
+        long time = clock.millis();
+        double t = 2*Math.PI*(time - startTime)/swingPeriod;
+        double theta = windDirection + swingAmplitude*(Math.sin(t)+0.3*Math.sin(t/7.3));
+        double thetaRate = swingAmplitude*(Math.cos(t)+0.3*Math.cos(t/7.3)/7.3)*2*Math.PI*1000/swingPeriod;
+        double drag = 0;
+        double speed = rode*Math.abs(thetaRate);
+        if (time > dragStart)
+        {
+            drag = dragSpeed*(time - dragStart)/1000.0;
+            speed += dragSpeed;
+        }
+        double east = rode*Math.sin(theta) + drag*Math.sin(windDirection) + noise*random.nextGaussian();
+        double north = rode*Math.cos(theta) + drag*Math.cos(windDirection) + noise*random.nextGaussian();
+        double latitude = anchorLatitude + north/DegreeMeters;
+        double longitude = anchorLongitude + east/(DegreeMeters*Math.cos(Math.toRadians(anchorLatitude)));
+        double acc = accuracy;
+        if (outagePeriod > 0 && (time - startTime) % outagePeriod < outageLength)
+        {
+            acc = outageAccuracy;
+        }
+        steps++;
+        sink.fix(time, longitude, latitude, acc, speed);
+    }
+    /**
+     * Restarts swing phase from current clock time.
+     */
+    public void restart()
+    {
+        startTime = clock.millis();
+    }
+
+    public void setAnchor(double longitude, double latitude)
+    {
+        this.anchorLongitude = longitude;
+        this.anchorLatitude = latitude;
+    }
+    /**
+     * Sets distance from anchor to GPS antenna.
+     * @param rode Meters
+     */
+    public void setRode(double rode)
+    {
+        this.rode = rode;
+    }
+    /**
+     * Sets direction where boat lies from anchor.
+     * @param degrees 
+     */
+    public void setWindDirection(double degrees)
+    {
+        this.windDirection = Math.toRadians(degrees);
+    }
+    /**
+     * Sets swing to both sides of wind direction.
+     * @param degrees 
+     */
+    public void setSwingAmplitude(double degrees)
+    {
+        this.swingAmplitude = Math.toRadians(degrees);
+    }
+
+    public void setSwingPeriod(long millis)
+    {
+        this.swingPeriod = millis;
+    }
+    /**
+     * Sets standard deviation of position error.
+     * @param meters 
+     */
+    public void setNoise(double meters)
+    {
+        this.noise = meters;
+    }
+    /**
+     * Sets reported accuracy.
+     * @param meters Meters or NaN for fixes without accuracy
+     */
+    public void setAccuracy(double meters)
+    {
+        this.accuracy = meters;
+    }
+    /**
+     * Starts dragging at given time.
+     * @param time Time in millis or Long.MAX_VALUE for never
+     * @param speed Drag speed in m/s
+     */
+    public void setDrag(long time, double speed)
+    {
+        this.dragStart = time;
+        this.dragSpeed = speed;
+    }
+
+    /**
+     * Degrades reported accuracy periodically.
+     * @param period Outage period in millis. 0 for no outages.
+     * @param length Outage length in millis
+     * @param accuracy Reported accuracy during outage
+     */
+    public void setOutage(long period, long length, double accuracy)
+    {
+        this.outagePeriod = period;
+        this.outageLength = length;
+        this.outageAccuracy = accuracy;
+    }
+
+    public long getDragStart()
+    {
+        return dragStart;
+    }
+
+    public long getSteps()
+    {
+        return steps;
+    }
+
+}
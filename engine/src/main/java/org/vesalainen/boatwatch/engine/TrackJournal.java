@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Append-only memory mapped journal of accepted fixes and watch events.
+ *
+ * <p>Record is written body first and type byte last. A record whose type
+ * byte is not written or whose check doesn't match ends the journal. When
+ * journal is full, records after last reset are moved to the beginning. If
+ * they don't fit in half of the capacity, only the latest half is kept.
+ *
+ * <p>Record check includes journal generation, which is stored in header.
+ * Compaction and clear increment generation and force header before moving
+ * records. If the process dies while records are moved, records of the old
+ * generation don't match and journal ends at the last moved record.
+ *
+ * <p>Journal is forced to disk after syncCount records or after syncMillis
+ * of fix time, whichever comes first.
+ *
+ * @author Timo Vesalainen
+ */
+public class TrackJournal implements Closeable
+{
+    public static final byte Fix = 1;
+    public static final byte Reset = 2;
+    public static final byte AnchorSet = 3;
+
+    private static final int Magic = 0x41574A4C;    // AWJL
+    private static final int Version = 1;
+    private static final int HeaderSize = 16;
+    private static final int RecordSize = 1+8+8+8+4+4+4;
+
+    private final File file;
+    private final int capacity;
+    private final int syncCount;
+    private final long syncMillis;
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int generation;
+    private int count;
+    private int lastReset = -1;
+    private int unsynced;
+    private long lastSync;
+    /**
+     * Opens existing journal or creates a new one.
+     * @param file
+     * @param capacity Maximum number of records
+     * @param syncCount Maximum number of records between forces
+     * @param syncMillis Maximum fix time between forces
+     * @throws IOException
+     */
+    public TrackJournal(File file, int capacity, int syncCount, long syncMillis) throws IOException
+    {
+        if (capacity < 2)
+        {
+            throw new IllegalArgumentException("capacity "+capacity+" < 2");
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.syncCount = syncCount;
+        this.syncMillis = syncMillis;
+        open();
+    }
+
+    private void open() throws IOException
+    {
+        boolean exists = file.exists() && file.length() > 0;
+        raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HeaderSize+(long)capacity*RecordSize);
+        if (exists && buffer.getInt(0) == Magic && buffer.getInt(4) == Version && buffer.getInt(8) == capacity)
+        {
+            generation = buffer.getInt(12);
+            scan();
+        }
+        else
+        {
+            generation = 0;
+            clear();
+        }
+    }
+
+    private void scan()
+    {
+        count = 0;
+        lastReset = -1;
+        while (count < capacity)
+        {
+            int pos = position(count);
+            byte type = buffer.get(pos);
+            if (type == 0 || buffer.getInt(pos+RecordSize-4) != check(pos))
+            {
+                break;
+            }
+            if (type == Reset)
+            {
+                lastReset = count;
+            }
+            count++;
+        }
+        if (count < capacity)
+        {
+            buffer.put(position(count), (byte)0);
+        }
+    }
+    /**
+     * Removes all records.
+     */
+    public void clear()
+    {
+        buffer.putInt(0, Magic);
+        buffer.putInt(4, Version);
+        buffer.putInt(8, capacity);
+        nextGeneration();
+        buffer.put(HeaderSize, (byte)0);
+        count = 0;
+        lastReset = -1;
+        sync(0);
+    }
+    /**
+     * Appends accepted fix.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy Accuracy or NaN
+     * @param speed Speed or NaN
+     */
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        append(Fix, time, longitude, latitude, accuracy, speed);
+    }
+    /**
+     * Appends watch reset event.
+     * @param time
+     */
+    public void reset(long time)
+    {
+        append(Reset, time, 0, 0, Double.NaN, Double.NaN);
+    }
+    /**
+     * Appends anchor set event.
+     * @param time
+     */
+    public void anchorSet(long time)
+    {
+        append(AnchorSet, time, 0, 0, Double.NaN, Double.NaN);
+    }
+
+    private void append(byte type, long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        if (count == capacity)
+        {
+            compact();
+        }
+        int pos = position(count);
+        if (count+1 < capacity)
+        {
+            buffer.put(pos+RecordSize, (byte)0);
+        }
+        buffer.putLong(pos+1, time);
+        buffer.putDouble(pos+9, longitude);
+        buffer.putDouble(pos+17, latitude);
+        buffer.putFloat(pos+25, (float) accuracy);
+        buffer.putFloat(pos+29, (float) speed);
+        buffer.putInt(pos+33, check(pos));
+        buffer.put(pos, type);
+        if (type == Reset)
+        {
+            lastReset = count;
+        }
+        count++;
+        unsynced++;
+        if (unsynced >= syncCount || time - lastSync >= syncMillis || type != Fix)
+        {
+            sync(time);
+        }
+    }
+
+    private void compact()
+    {
+        compact(Integer.MAX_VALUE);
+    }
+    /**
+     * Moves records after last reset, or latest half, to the beginning.
+     * @param limit Maximum number of records to move. Used by tests to
+     * simulate process dying during compaction.
+     */
+    void compact(int limit)
+    {
+        int start = Math.max(lastReset, 0);
+        start = Math.max(start, count - capacity/2);
+        int keep = count - start;
+        nextGeneration();
+        ByteBuffer src = buffer.duplicate();
+        ByteBuffer dst = buffer.duplicate();
+        for (int ii=0;ii<keep && ii<limit;ii++)
+        {
+            int from = position(start+ii);
+            int to = position(ii);
+            src.limit(from+RecordSize-4);
+            src.position(from+1);
+            dst.position(to+1);
+            dst.put(src);
+            buffer.putInt(to+RecordSize-4, check(to));
+            buffer.put(to, buffer.get(from));
+        }
+        if (limit < keep)
+        {
+            return;
+        }
+        lastReset = lastReset >= start ? lastReset - start : -1;
+        count = keep;
+        buffer.put(position(count), (byte)0);
+        sync(lastSync);
+    }
+
+    private void nextGeneration()
+    {
+        generation++;
+        buffer.putInt(12, generation);
+        buffer.force();
+    }
+
+    private void sync(long time)
+    {
+        buffer.force();
+        unsynced = 0;
+        lastSync = time;
+    }
+    /**
+     * Replays records after last reset.
+     * @param replayer
+     */
+    public void replay(Replayer replayer)
+    {
+        for (int ii=lastReset+1;ii<count;ii++)
+        {
+            int pos = position(ii);
+            long time = buffer.getLong(pos+1);
+            switch (buffer.get(pos))
+            {
+                case Fix:
+                    replayer.fix(
+                            time,
+                            buffer.getDouble(pos+9),
+                            buffer.getDouble(pos+17),
+                            buffer.getFloat(pos+25),
+                            buffer.getFloat(pos+29)
+                    );
+                    break;
+                case AnchorSet:
+                    replayer.anchorSet(time);
+                    break;
+            }
+        }
+    }
+    /**
+     * Returns true if journal contains reset event. Records before it are
+     * obsolete.
+     * @return
+     */
+    public boolean hasReset()
+    {
+        return lastReset >= 0;
+    }
+    /**
+     * Returns number of records after last reset.
+     * @return
+     */
+    public int size()
+    {
+        return count - lastReset - 1;
+    }
+
+    private int position(int index)
+    {
+        return HeaderSize + index*RecordSize;
+    }
+
+    private int check(int pos)
+    {
+        int h = 17 + 31*generation;
+        for (int ii=1;ii<RecordSize-4;ii+=4)
+        {
+            h = 31*h + buffer.getInt(pos+ii);
+        }
+        return h;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        buffer.force();
+        raf.close();
+    }
+
+    public interface Replayer extends FixSink
+    {
+        void anchorSet(long time);
+    }
+}
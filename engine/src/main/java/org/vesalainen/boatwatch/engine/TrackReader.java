@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import static org.vesalainen.boatwatch.engine.TrackRecorder.*;
+
+/**
+ * Reads track files written by TrackRecorder.
+ *
+ * @author Timo Vesalainen
+ * @see TrackRecorder
+ */
+public class TrackReader implements Closeable
+{
+    private final FileInputStream in;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RecordSize*4096);
+
+    public TrackReader(File file) throws IOException
+    {
+        in = new FileInputStream(file);
+        channel = in.getChannel();
+        buffer.limit(HeaderSize);
+        fill();
+        if (buffer.remaining() < HeaderSize || buffer.getInt() != Magic)
+        {
+            in.close();
+            throw new IOException(file+" is not a track file");
+        }
+        short version = buffer.getShort();
+        if (version < 1 || version > Version)
+        {
+            in.close();
+            throw new IOException(file+" has unsupported version "+version);
+        }
+        buffer.clear();
+        buffer.flip();
+    }
+    /**
+     * Reads at most max fixes to sink.
+     * @param sink
+     * @param max
+     * @return Number of fixes read. Less than max only at the end of file.
+     * @throws IOException 
+     */
+    public int read(FixSink sink, int max) throws IOException
+    {
+        int cnt = 0;
+        while (cnt < max)
+        {
+            if (buffer.remaining() < RecordSize)
+            {
+                buffer.compact();
+                fill();
+                if (buffer.remaining() < RecordSize)
+                {
+                    break;
+                }
+            }
+            long time = buffer.getLong();
+            double longitude = buffer.getInt()/DegreeScale;
+            double latitude = buffer.getInt()/DegreeScale;
+            double accuracy = decode(buffer.getShort(), AccuracyScale);
+            double speed = decode(buffer.getShort(), SpeedScale);
+            sink.fix(time, longitude, latitude, accuracy, speed);
+            cnt++;
+        }
+        return cnt;
+    }
+    /**
+     * Reads all remaining fixes to sink.
+     * @param sink
+     * @return Number of fixes read.
+     * @throws IOException 
+     */
+    public long readAll(FixSink sink) throws IOException
+    {
+        long total = 0;
+        int cnt;
+        while ((cnt = read(sink, Integer.MAX_VALUE)) > 0)
+        {
+            total += cnt;
+        }
+        return total;
+    }
+
+    private void fill() throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer) < 0)
+            {
+                break;
+            }
+        }
+        buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+}
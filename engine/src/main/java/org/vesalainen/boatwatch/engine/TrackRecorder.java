@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records raw fixes to a compact binary track file.
+ *
+ * <p>File starts with magic and version. Each record is time (long),
+ * longitude and latitude in 1e-7 degrees (int), accuracy in decimeters
+ * (short) and speed in cm/s (short). Missing accuracy or speed is -1.
+ * Records are buffered and written when buffer is full or flush is called.
+ *
+ * @author Timo Vesalainen
+ * @see TrackReader
+ */
+public class TrackRecorder implements FixSink, Flushable, Closeable
+{
+    static final int Magic = 0x41575452;    // AWTR
+    static final short Version = 1;
+    static final int HeaderSize = 4+2;
+    static final int RecordSize = 8+4+4+2+2;
+    static final double DegreeScale = 1e7;
+    static final double AccuracyScale = 10;
+    static final double SpeedScale = 100;
+
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RecordSize*256);
+    private long count;
+    /**
+     * Creates new track file or appends to existing one.
+     * @param file
+     * @throws IOException 
+     */
+    public TrackRecorder(File file) throws IOException
+    {
+        boolean append = file.exists() && file.length() >= HeaderSize;
+        out = new FileOutputStream(file, append);
+        channel = out.getChannel();
+        if (!append)
+        {
+            buffer.putInt(Magic);
+            buffer.putShort(Version);
+            flush();
+        }
+    }
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        try
+        {
+            record(time, longitude, latitude, accuracy, speed);
+        }
+        catch (IOException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+    /**
+     * Records fix. Buffer is flushed to file when full.
+     * @param time
+     * @param longitude
+     * @param latitude
+     * @param accuracy
+     * @param speed
+     * @throws IOException If flushing failed. Recorder should be closed.
+     */
+    public void record(long time, double longitude, double latitude, double accuracy, double speed) throws IOException
+    {
+        if (buffer.remaining() < RecordSize)
+        {
+            flush();
+        }
+        buffer.putLong(time);
+        buffer.putInt((int) Math.round(longitude*DegreeScale));
+        buffer.putInt((int) Math.round(latitude*DegreeScale));
+        buffer.putShort(encode(accuracy, AccuracyScale));
+        buffer.putShort(encode(speed, SpeedScale));
+        count++;
+    }
+
+    private static short encode(double value, double scale)
+    {
+        if (Double.isNaN(value) || value < 0)
+        {
+            return -1;
+        }
+        return (short) Math.min(Short.MAX_VALUE, Math.round(value*scale));
+    }
+
+    static double decode(short value, double scale)
+    {
+        return value < 0 ? Double.NaN : value/scale;
+    }
+    /**
+     * Returns number of fixes recorded.
+     * @return 
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Arrays;
+
+/**
+ * Fixed capacity track history in primitive arrays with time bucket
+ * decimation. Records are kept in time order from index 0. When store is
+ * full, bucket time is doubled and the store is thinned in place to one
+ * record per bucket, keeping first, last and marked records. New records
+ * closer than bucket time to previous record are skipped. Memory is fixed
+ * and history covers the whole anchorage at coarser resolution as it
+ * grows.
+ *
+ * <p>Store is written by one thread. Arrays are exposed as zero-copy views
+ * for other threads: records below size are stable unless generation
+ * changes. Generation is odd while thinning.
+ *
+ * @author Timo Vesalainen
+ */
+public class TrackStore
+{
+    public static final byte Marked = 1;
+    private static final long MinBucketMillis = 1000;
+    private final int capacity;
+    private final long[] time;
+    private final double[] x;
+    private final double[] y;
+    private final float[] accuracy;
+    private final float[] speed;
+    private final byte[] flags;
+    private volatile int size;
+    private volatile int generation;
+    private long bucketMillis;
+    private long skipped;
+
+    public TrackStore(int capacity)
+    {
+        if (capacity < 4)
+        {
+            throw new IllegalArgumentException("capacity "+capacity+" < 4");
+        }
+        this.capacity = capacity;
+        time = new long[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        accuracy = new float[capacity];
+        speed = new float[capacity];
+        flags = new byte[capacity];
+    }
+    /**
+     * Adds record unless it is within bucket time from previous one.
+     * @param time
+     * @param x
+     * @param y
+     * @param accuracy
+     * @param speed
+     * @return true if record was stored
+     */
+    public boolean add(long time, double x, double y, double accuracy, double speed)
+    {
+        int s = size;
+        if (s > 0 && time - this.time[s-1] < bucketMillis)
+        {
+            skipped++;
+            return false;
+        }
+        if (s == capacity)
+        {
+            thin();
+            s = size;
+        }
+        this.time[s] = time;
+        this.x[s] = x;
+        this.y[s] = y;
+        this.accuracy[s] = (float) accuracy;
+        this.speed[s] = (float) speed;
+        this.flags[s] = 0;
+        size = s+1;
+        return true;
+    }
+    /**
+     * Marks latest record. Marked records survive thinning.
+     */
+    public void mark()
+    {
+        int s = size;
+        if (s > 0)
+        {
+            flags[s-1] |= Marked;
+        }
+    }
+    /**
+     * Returns index of latest marked record or -1.
+     * @return 
+     */
+    public int getLastMarked()
+    {
+        for (int ii=size-1;ii>=0;ii--)
+        {
+            if ((flags[ii] & Marked) != 0)
+            {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    public void clear()
+    {
+        generation++;
+        size = 0;
+        bucketMillis = 0;
+        generation++;
+    }
+
+    private void thin()
+    {
+        generation++;
+        int s = size;
+        int kept = s;
+        long span = time[s-1] - time[0];
+        while (kept == s && bucketMillis <= span)
+        {
+            bucketMillis = Math.max(MinBucketMillis, 2*bucketMillis);
+            kept = 1;
+            for (int ii=1;ii<s;ii++)
+            {
+                if (ii == s-1 || (flags[ii] & Marked) != 0 || time[ii] - time[kept-1] >= bucketMillis)
+                {
+                    time[kept] = time[ii];
+                    x[kept] = x[ii];
+                    y[kept] = y[ii];
+                    accuracy[kept] = accuracy[ii];
+                    speed[kept] = speed[ii];
+                    flags[kept] = flags[ii];
+                    kept++;
+                }
+            }
+        }
+        skipped += s - kept;
+        size = kept;
+        if (kept == s)
+        {
+            // every record is marked, drop oldest half
+            int drop = s/2;
+            System.arraycopy(time, drop, time, 0, s-drop);
+            System.arraycopy(x, drop, x, 0, s-drop);
+            System.arraycopy(y, drop, y, 0, s-drop);
+            System.arraycopy(accuracy, drop, accuracy, 0, s-drop);
+            System.arraycopy(speed, drop, speed, 0, s-drop);
+            System.arraycopy(flags, drop, flags, 0, s-drop);
+            Arrays.fill(flags, s-drop, s, (byte)0);
+            skipped += drop;
+            size = s-drop;
+        }
+        generation++;
+    }
+    /**
+     * Returns number of valid records in view arrays.
+     * @return 
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+    /**
+     * Returns generation. If generation is odd or changes while reading
+     * view arrays, read values may be inconsistent.
+     * @return 
+     */
+    public int getGeneration()
+    {
+        return generation;
+    }
+    /**
+     * Returns current bucket time in millis.
+     * @return 
+     */
+    public long getBucketMillis()
+    {
+        return bucketMillis;
+    }
+    /**
+     * Returns number of records skipped or thinned away.
+     * @return 
+     */
+    public long getSkipped()
+    {
+        return skipped;
+    }
+
+    public long[] getTimeView()
+    {
+        return time;
+    }
+
+    public double[] getXView()
+    {
+        return x;
+    }
+
+    public double[] getYView()
+    {
+        return y;
+    }
+
+    public float[] getAccuracyView()
+    {
+        return accuracy;
+    }
+
+    public float[] getSpeedView()
+    {
+        return speed;
+    }
+
+    public byte[] getFlagsView()
+    {
+        return flags;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clock that advances only when told to. Deadlines of registered schedulers
+ * are run in time order while advancing, so that hours of scheduled
+ * activity can be run in milliseconds.
+ *
+ * <p>Registered schedulers must not be started.
+ *
+ * <p>Deadlines that keep re-arming themselves without delay would never let
+ * time advance. After MaxPasses passes at same time advanceTo throws
+ * IllegalStateException.
+ *
+ * @author Timo Vesalainen
+ */
+public class VirtualClock implements Clock
+{
+    static final int MaxPasses = 10000;
+    private long millis;
+    private final List<DeadlineScheduler> schedulers = new ArrayList<>();
+
+    public VirtualClock(long millis)
+    {
+        this.millis = millis;
+    }
+
+    @Override
+    public long millis()
+    {
+        return millis;
+    }
+
+    public void register(DeadlineScheduler scheduler)
+    {
+        schedulers.add(scheduler);
+    }
+    /**
+     * Advances clock by delta milliseconds.
+     * @param delta 
+     */
+    public void advance(long delta)
+    {
+        advanceTo(millis + delta);
+    }
+    /**
+     * Advances clock to time. Each due deadline is run with clock set to
+     * its deadline time.
+     * @param time 
+     */
+    public void advanceTo(long time)
+    {
+        int size = schedulers.size();
+        int passes = 0;
+        while (true)
+        {
+            long next = Long.MAX_VALUE;
+            for (int ii=0;ii<size;ii++)
+            {
+                next = Math.min(next, schedulers.get(ii).nextDeadline());
+            }
+            if (next > time)
+            {
+                break;
+            }
+            if (next > millis)
+            {
+                millis = next;
+                passes = 0;
+            }
+            if (++passes > MaxPasses)
+            {
+                throw new IllegalStateException("deadlines re-armed "+MaxPasses+" times at "+millis);
+            }
+            for (int ii=0;ii<size;ii++)
+            {
+                schedulers.get(ii).runDue(millis);
+            }
+        }
+        if (time > millis)
+        {
+            millis = time;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Arrays;
+import org.ejml.data.DenseMatrix64F;
+import org.vesalainen.math.Circle;
+import org.vesalainen.math.ConvexPolygon;
+import org.vesalainen.navi.AnchorWatch;
+import org.vesalainen.navi.AnchorWatch.Watcher;
+import org.vesalainen.navi.SafeSector;
+
+/**
+ * Forwards watcher callbacks from engine thread to registered watchers.
+ * Watchers can be added and removed from any thread. Watchers are kept in
+ * copy-on-write array so that dispatching doesn't allocate.
+ *
+ * <p>Area is forwarded when a watcher has been added or polygon vertices
+ * differ from the last forwarded ones. Vertices of forwarded area are
+ * copied, so that library can reuse the polygon.
+ *
+ * <p>Estimated circle from AnchorWatch is forwarded as is. If radius gauge
+ * is set, locations are also added to EnclosingCircle and its radius in
+ * meters is stored to gauge with each estimate. Without gauge no
+ * enclosing circle is maintained.
+ *
+ * <p>If dispatch timer is set, time spent in each callback, including
+ * registered watchers, is added to it.
+ *
+ * @author Timo Vesalainen
+ */
+public class WatcherDispatcher implements Watcher
+{
+    private static final int EstimatorCapacity = 8192;
+    private volatile Watcher[] watchers = new Watcher[0];
+    private volatile boolean forceArea = true;
+    private EnclosingCircle estimator;
+    private double[] areaPoints = new double[64];
+    private int areaRows = -1;
+    private long areas;
+    private long suppressedAreas;
+    private Metrics.Timer dispatchTimer;
+    private Metrics.Gauge radiusGauge;
+
+    public synchronized void addWatcher(Watcher watcher)
+    {
+        Watcher[] arr = watchers;
+        if (indexOf(arr, watcher) == -1)
+        {
+            arr = Arrays.copyOf(arr, arr.length+1);
+            arr[arr.length-1] = watcher;
+            watchers = arr;
+            forceArea = true;
+        }
+    }
+
+    public synchronized void removeWatcher(Watcher watcher)
+    {
+        Watcher[] arr = watchers;
+        int index = indexOf(arr, watcher);
+        if (index != -1)
+        {
+            Watcher[] na = new Watcher[arr.length-1];
+            System.arraycopy(arr, 0, na, 0, index);
+            System.arraycopy(arr, index+1, na, index, na.length-index);
+            watchers = na;
+        }
+    }
+
+    /**
+     * Forgets last area and estimator points. Must be called in engine
+     * thread when watch is reset.
+     */
+    public void reset()
+    {
+        if (estimator != null)
+        {
+            estimator.reset();
+        }
+        forceArea = true;
+        areaRows = -1;
+    }
+
+    private static int indexOf(Watcher[] arr, Watcher watcher)
+    {
+        for (int ii=0;ii<arr.length;ii++)
+        {
+            if (arr[ii] == watcher)
+            {
+                return ii;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void alarm(double distance)
+    {
+        long start = System.nanoTime();
+        Watcher[] arr = watchers;
+        for (Watcher watcher : arr)
+        {
+            watcher.alarm(distance);
+        }
+        recordDispatch(start);
+    }
+
+    @Override
+    public void location(double x, double y, long time, double accuracy, double speed)
+    {
+        long start = System.nanoTime();
+        if (estimator != null)
+        {
+            estimator.add(x, y);
+        }
+        Watcher[] arr = watchers;
+        for (Watcher watcher : arr)
+        {
+            watcher.location(x, y, time, accuracy, speed);
+        }
+        recordDispatch(start);
+    }
+
+    @Override
+    public void area(ConvexPolygon area)
+    {
+        long start = System.nanoTime();
+        if (forceArea || !sameArea(area.points))
+        {
+            forwardArea(area);
+        }
+        else
+        {
+            suppressedAreas++;
+        }
+        recordDispatch(start);
+    }
+
+    private void recordDispatch(long start)
+    {
+        Metrics.Timer timer = dispatchTimer;
+        if (timer != null)
+        {
+            timer.since(start);
+        }
+    }
+
+    private boolean sameArea(DenseMatrix64F points)
+    {
+        if (points.numRows != areaRows)
+        {
+            return false;
+        }
+        int len = 2*areaRows;
+        for (int ii=0;ii<len;ii++)
+        {
+            if (points.data[ii] != areaPoints[ii])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void forwardArea(ConvexPolygon area)
+    {
+        DenseMatrix64F points = area.points;
+        int len = 2*points.numRows;
+        if (areaPoints.length < len)
+        {
+            areaPoints = new double[2*len];
+        }
+        System.arraycopy(points.data, 0, areaPoints, 0, len);
+        areaRows = points.numRows;
+        forceArea = false;
+        areas++;
+        Watcher[] arr = watchers;
+        for (Watcher watcher : arr)
+        {
+            watcher.area(area);
+        }
+    }
+
+    @Override
+    public void outer(DenseMatrix64F path)
+    {
+        long start = System.nanoTime();
+        Watcher[] arr = watchers;
+        for (Watcher watcher : arr)
+        {
+            watcher.outer(path);
+        }
+        recordDispatch(start);
+    }
+
+    @Override
+    public void estimated(Circle estimated)
+    {
+        long start = System.nanoTime();
+        Metrics.Gauge gauge = radiusGauge;
+        if (gauge != null && estimator.getCount() > 0)
+        {
+            gauge.set(Math.round(AnchorWatch.toMeters(estimator.getRadius())));
+        }
+        Watcher[] arr = watchers;
+        for (Watcher watcher : arr)
+        {
+            watcher.estimated(estimated);
+        }
+        recordDispatch(start);
+    }
+
+    @Override
+    public void safeSector(SafeSector safe)
+    {
+        long start = System.nanoTime();
+        Watcher[] arr = watchers;
+        for (Watcher watcher : arr)
+        {
+            watcher.safeSector(safe);
+        }
+        recordDispatch(start);
+    }
+
+    @Override
+    public void suggestNextUpdateIn(double seconds, double meters)
+    {
+        long start = System.nanoTime();
+        Watcher[] arr = watchers;
+        for (Watcher watcher : arr)
+        {
+            watcher.suggestNextUpdateIn(seconds, meters);
+        }
+        recordDispatch(start);
+    }
+    /**
+     * Returns number of forwarded area callbacks.
+     * @return 
+     */
+    public long getAreas()
+    {
+        return areas;
+    }
+    /**
+     * Returns number of area callbacks not forwarded because vertices were
+     * same as in last forwarded area.
+     * @return 
+     */
+    public long getSuppressedAreas()
+    {
+        return suppressedAreas;
+    }
+
+    /**
+     * Returns enclosing circle estimator or null if radius gauge is not set.
+     * @return 
+     */
+    public EnclosingCircle getEstimator()
+    {
+        return estimator;
+    }
+    /**
+     * Sets timer for callback dispatch time.
+     * @param dispatchTimer Timer or null
+     */
+    public void setDispatchTimer(Metrics.Timer dispatchTimer)
+    {
+        this.dispatchTimer = dispatchTimer;
+    }
+    /**
+     * Sets gauge for enclosing circle radius in meters. Enclosing circle is
+     * maintained only while gauge is set. Must be called in engine thread.
+     * @param radiusGauge Gauge or null
+     */
+    public void setRadiusGauge(Metrics.Gauge radiusGauge)
+    {
+        if (radiusGauge == null)
+        {
+            estimator = null;
+        }
+        else
+        {
+            if (estimator == null)
+            {
+                estimator = new EnclosingCircle(EstimatorCapacity);
+            }
+        }
+        this.radiusGauge = radiusGauge;
+    }
+
+}
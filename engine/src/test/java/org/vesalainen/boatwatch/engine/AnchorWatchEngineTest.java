@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import org.vesalainen.navi.AnchorWatch;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class AnchorWatchEngineTest
+{
+    private static final double Longitude = 24.9;
+    private static final double Latitude = 60.1;
+    private static final double DegreeMeters = 60*1852;
+    private final AnchorWatchEngine engine = new AnchorWatchEngine(new AnchorWatch());
+    private long time;
+
+    public AnchorWatchEngineTest()
+    {
+        engine.setMinAccuracy(20);
+        engine.setFilter(null);
+    }
+    /**
+     * Fixes with accuracy pass only if accuracy is at most minAccuracy.
+     */
+    @Test
+    public void testAccuracyGate()
+    {
+        assertTrue(update(5));
+        assertTrue(update(20));
+        assertFalse(update(21));
+        assertEquals(3, engine.getReceived());
+        assertEquals(2, engine.getAccepted());
+        assertEquals(1, engine.getRejected());
+        assertEquals(0, engine.getUnknown());
+    }
+    /**
+     * Fixes without accuracy pass if assumed unknown accuracy passes gate.
+     * NaN rejects them.
+     */
+    @Test
+    public void testUnknownAccuracy()
+    {
+        assertTrue(update(Double.NaN));
+        assertEquals(1, engine.getUnknown());
+        assertEquals(1, engine.getAccepted());
+        engine.setUnknownAccuracy(Double.NaN);
+        assertFalse(update(Double.NaN));
+        engine.setUnknownAccuracy(30);
+        assertFalse(update(Double.NaN));
+        engine.setUnknownAccuracy(10);
+        assertTrue(update(Double.NaN));
+        assertEquals(4, engine.getUnknown());
+        assertEquals(2, engine.getRejected());
+        assertEquals(2, engine.getAccepted());
+    }
+
+    /**
+     * Filter doesn't reject fix farther from last accepted fix than sleep
+     * policy margin, because it can be outside safe sector. Without location
+     * margin is 0.
+     */
+    @Test
+    public void testOutsideSafeSector()
+    {
+        engine.setFilter(new HampelFilter());
+        for (int ii=0;ii<7;ii++)
+        {
+            assertTrue(update(ii % 2, 5));
+        }
+        assertFalse(update(50, 5));
+        assertEquals(1, engine.getFiltered());
+        engine.getSleepPolicy().safeSector(true, 0, 0, 100/AnchorWatch.toMeters(1), 0, 0, 0, 0, 0);
+        assertTrue(update(50, 5));
+        assertEquals(1, engine.getBypassed());
+        engine.getSleepPolicy().location(0, 0, time, 0);
+        assertTrue(update(0, 5));
+        assertFalse(update(-50, 5));
+        assertTrue(update(-150, 5));
+        assertEquals(2, engine.getFiltered());
+        assertEquals(2, engine.getBypassed());
+    }
+
+    private boolean update(double accuracy)
+    {
+        return update(0, accuracy);
+    }
+
+    private boolean update(double north, double accuracy)
+    {
+        time += 1000;
+        return engine.update(time, Longitude, Latitude + north/DegreeMeters, accuracy, Double.NaN);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Arrays;
+
+/**
+ * Compares EnclosingCircle with full recompute of minimum enclosing circle
+ * over a simulated track. For each history size n, 2n fixes are streamed so
+ * that the second half evicts points. Full recompute is timed at sample
+ * points and its result compared with the incremental circle.
+ *
+ * <p>Usage: CircleBenchmark [n...] (default 1000 100000 1000000)
+ *
+ * @author Timo Vesalainen
+ */
+public class CircleBenchmark implements FixSink
+{
+    private static final double DegreeMeters = 60*1852;
+    private static final int Samples = 50;
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private int count;
+    private double lon0 = Double.NaN;
+    private double lat0;
+    private double lonScale;
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        if (Double.isNaN(lon0))
+        {
+            lon0 = longitude;
+            lat0 = latitude;
+            lonScale = DegreeMeters*Math.cos(Math.toRadians(latitude));
+        }
+        if (count == xs.length)
+        {
+            xs = Arrays.copyOf(xs, 2*count);
+            ys = Arrays.copyOf(ys, 2*count);
+        }
+        xs[count] = (longitude - lon0)*lonScale;
+        ys[count] = (latitude - lat0)*DegreeMeters;
+        count++;
+    }
+
+    private void run(int n)
+    {
+        EnclosingCircle warm = new EnclosingCircle(Math.min(n, 10000));
+        for (int ii=0;ii<Math.min(count, 20000);ii++)
+        {
+            warm.add(xs[ii], ys[ii]);
+        }
+        EnclosingCircle circle = new EnclosingCircle(n);
+        long t0 = System.nanoTime();
+        for (int ii=0;ii<count;ii++)
+        {
+            circle.add(xs[ii], ys[ii]);
+        }
+        long incremental = System.nanoTime() - t0;
+        long expansions = circle.getExpansions();
+        long rebuilds = circle.getRebuilds();
+        circle = new EnclosingCircle(n);
+        int step = Math.max(1, count/Samples);
+        long full = 0;
+        int samples = 0;
+        double error = 0;
+        for (int ii=0;ii<count;ii++)
+        {
+            circle.add(xs[ii], ys[ii]);
+            if ((ii+1) % step == 0)
+            {
+                double x = circle.getX();
+                double y = circle.getY();
+                double r = circle.getRadius();
+                long s = System.nanoTime();
+                circle.rebuild();
+                full += System.nanoTime() - s;
+                samples++;
+                error = Math.max(error, Math.hypot(x - circle.getX(), y - circle.getY()));
+                error = Math.max(error, Math.abs(r - circle.getRadius()));
+            }
+        }
+        System.out.printf("n=%d: fixes=%d radius=%.1f m expansions=%d rebuilds=%d incremental=%.0f ns/fix full=%.0f ns/fix error=%.2e m%n",
+                n,
+                count,
+                circle.getRadius(),
+                expansions,
+                rebuilds,
+                (double)incremental/Math.max(1, count),
+                (double)full/Math.max(1, samples),
+                error
+                );
+    }
+
+    public static void main(String... args)
+    {
+        int[] sizes = new int[] {1000, 100000, 1000000};
+        if (args.length > 0)
+        {
+            sizes = new int[args.length];
+            for (int ii=0;ii<args.length;ii++)
+            {
+                sizes[ii] = Integer.parseInt(args[ii]);
+            }
+        }
+        for (int n : sizes)
+        {
+            VirtualClock clock = new VirtualClock(0);
+            CircleBenchmark bm = new CircleBenchmark();
+            SwingSimulator sim = new SwingSimulator(clock, bm, 1);
+            for (int ii=0;ii<2*n;ii++)
+            {
+                clock.advance(1000);
+                sim.step();
+            }
+            bm.run(n);
+        }
+    }
+}
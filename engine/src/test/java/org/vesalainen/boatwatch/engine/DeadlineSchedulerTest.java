@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.vesalainen.boatwatch.engine.DeadlineScheduler.Deadline;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class DeadlineSchedulerTest
+{
+    private static final int Fixes = 5000000;
+    private static final long FixMillis = 1000;
+    private static final long WatchdogMillis = 60000;
+    private static final long MuteMillis = 600000;
+    private static final long MaxAllocated = 4096;
+    private final VirtualClock clock = new VirtualClock(0);
+    private final DeadlineScheduler scheduler = new DeadlineScheduler(clock, "test");
+    private long watchdogs;
+    private long resumes;
+    private long reruns;
+    private final Deadline watchdog = scheduler.create(new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            watchdogs++;
+        }
+    });
+    private final Deadline resume = scheduler.create(new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            resumes++;
+        }
+    });
+    private final Deadline rerun = scheduler.create(new Runnable() 
+    {
+        @Override
+        public void run()
+        {
+            reruns++;
+            rerun.arm(0);
+        }
+    });
+
+    public DeadlineSchedulerTest()
+    {
+        clock.register(scheduler);
+    }
+    /**
+     * Re-arms watchdog and mute deadline millions of times as fixes do and
+     * checks that scheduler doesn't grow or allocate. MaxAllocated covers
+     * allocation counter itself, while one object per fix would be
+     * megabytes.
+     */
+    @Test
+    public void testSoak()
+    {
+        soak(100000);
+        int count = scheduler.getCount();
+        long allocated = allocated();
+        soak(Fixes);
+        allocated = allocated() - allocated;
+        assertEquals(count, scheduler.getCount());
+        assertEquals(0, watchdogs);
+        assertEquals(0, resumes);
+        if (allocated >= 0)
+        {
+            assertTrue("allocated "+allocated+" bytes", allocated < MaxAllocated);
+        }
+    }
+
+    private void soak(int fixes)
+    {
+        for (int ii=0;ii<fixes;ii++)
+        {
+            clock.advance(FixMillis);
+            watchdog.cancel();
+            watchdog.arm(WatchdogMillis);
+            if (ii % 100 == 0)
+            {
+                resume.arm(MuteMillis);
+            }
+        }
+    }
+
+    @Test
+    public void testExpire()
+    {
+        watchdog.arm(WatchdogMillis);
+        clock.advance(WatchdogMillis-1);
+        assertEquals(0, watchdogs);
+        assertTrue(watchdog.isArmed());
+        clock.advance(1);
+        assertEquals(1, watchdogs);
+        assertFalse(watchdog.isArmed());
+        assertTrue(watchdog.isActive());
+        clock.advance(10*WatchdogMillis);
+        assertEquals(1, watchdogs);
+        watchdog.cancel();
+        assertFalse(watchdog.isActive());
+    }
+
+    @Test
+    public void testRearmOverrides()
+    {
+        resume.arm(MuteMillis);
+        resume.arm(WatchdogMillis);
+        clock.advance(WatchdogMillis);
+        assertEquals(1, resumes);
+        clock.advance(MuteMillis);
+        assertEquals(1, resumes);
+    }
+
+    @Test
+    public void testZeroDelayRearm()
+    {
+        rerun.arm(0);
+        try
+        {
+            clock.advance(1000);
+            fail("zero delay re-arm didn't stop");
+        }
+        catch (IllegalStateException ex)
+        {
+        }
+        assertEquals(VirtualClock.MaxPasses, reruns);
+    }
+    /**
+     * Returns bytes allocated by current thread or -1 if not supported.
+     */
+    private static long allocated()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled())
+            {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
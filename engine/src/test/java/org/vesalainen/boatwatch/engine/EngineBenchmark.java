@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.concurrent.TimeUnit;
+import org.ejml.data.DenseMatrix64F;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vesalainen.math.Circle;
+import org.vesalainen.math.ConvexPolygon;
+import org.vesalainen.navi.AnchorWatch;
+import org.vesalainen.navi.AnchorWatch.Watcher;
+import org.vesalainen.navi.SafeSector;
+
+/**
+ * JMH suite for AnchorWatchEngine hot path.
+ *
+ * <p>fixes measures accepted fixes per second through accuracy gate, filter
+ * and AnchorWatch. Allocations per fix are reported by gc profiler as
+ * gc.alloc.rate.norm (bytes/op). fixToAlarm measures latency from update
+ * of the first fix outside safe sector to alarm callback in a watch that
+ * has converged on a simulated swing track.
+ *
+ * <p>Usage: mvn -pl engine test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="EngineBenchmark -prof gc"
+ *
+ * @author Timo Vesalainen
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EngineBenchmark
+{
+    private static final int TrackSize = 65536;
+    private static final int ConvergeFixes = 3600;
+    private static final double DragMeters = 200;
+    /**
+     * Simulated swing track. Fixes are kept in arrays, so that feeding them
+     * doesn't allocate.
+     */
+    @State(Scope.Thread)
+    public static class Track implements FixSink
+    {
+        long[] time = new long[TrackSize];
+        double[] longitude = new double[TrackSize];
+        double[] latitude = new double[TrackSize];
+        double[] accuracy = new double[TrackSize];
+        double[] speed = new double[TrackSize];
+        int count;
+        int next;
+        long offset;
+        AnchorWatchEngine engine;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            VirtualClock clock = new VirtualClock(0);
+            SwingSimulator sim = new SwingSimulator(clock, this, 1);
+            for (int ii=0;ii<TrackSize;ii++)
+            {
+                clock.advance(1000);
+                sim.step();
+            }
+            engine = new AnchorWatchEngine(new AnchorWatch());
+            engine.setMinAccuracy(20);
+        }
+
+        @Override
+        public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+        {
+            this.time[count] = time;
+            this.longitude[count] = longitude;
+            this.latitude[count] = latitude;
+            this.accuracy[count] = accuracy;
+            this.speed[count] = speed;
+            count++;
+        }
+    }
+    /**
+     * Watch converged on swing track. Rebuilt for each invocation, because
+     * drag fix changes the watch. Location and safe sector are passed to
+     * sleep policy as service does.
+     */
+    @State(Scope.Thread)
+    public static class Converged implements Watcher
+    {
+        AnchorWatchEngine engine;
+        long dragTime;
+        double dragLongitude;
+        double dragLatitude;
+        boolean alarm;
+
+        @Setup(Level.Invocation)
+        public void setup()
+        {
+            final VirtualClock clock = new VirtualClock(0);
+            AnchorWatch watch = new AnchorWatch();
+            engine = new AnchorWatchEngine(watch);
+            engine.setMinAccuracy(20);
+            FixSink sink = new FixSink() 
+            {
+                @Override
+                public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+                {
+                    engine.update(time, longitude, latitude, accuracy, speed);
+                    dragLongitude = longitude;
+                    dragLatitude = latitude;
+                }
+            };
+            watch.addWatcher(this);
+            SwingSimulator sim = new SwingSimulator(clock, sink, 1);
+            for (int ii=0;ii<ConvergeFixes;ii++)
+            {
+                clock.advance(1000);
+                sim.step();
+            }
+            watch.setAnchorLocation();
+            dragTime = clock.millis() + 1000;
+            dragLatitude -= DragMeters/AnchorWatch.toMeters(1);
+            alarm = false;
+        }
+
+        @Override
+        public void alarm(double distance)
+        {
+            alarm = true;
+        }
+
+        @Override
+        public void location(double x, double y, long time, double accuracy, double speed)
+        {
+            engine.getSleepPolicy().location(x, y, time, accuracy);
+        }
+
+        @Override
+        public void area(ConvexPolygon area)
+        {
+        }
+
+        @Override
+        public void outer(DenseMatrix64F path)
+        {
+        }
+
+        @Override
+        public void estimated(Circle estimated)
+        {
+        }
+
+        @Override
+        public void safeSector(SafeSector safe)
+        {
+            engine.getSleepPolicy().safeSector(safe);
+        }
+
+        @Override
+        public void suggestNextUpdateIn(double seconds, double meters)
+        {
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean fixes(Track track)
+    {
+        int ii = track.next++;
+        if (track.next == track.count)
+        {
+            track.next = 0;
+            track.offset += track.time[ii] - track.time[0] + 1000;
+        }
+        return track.engine.update(track.offset + track.time[ii], track.longitude[ii], track.latitude[ii], track.accuracy[ii], track.speed[ii]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Measurement(iterations = 5, time = 5)
+    public boolean fixToAlarm(Converged converged)
+    {
+        converged.engine.update(converged.dragTime, converged.dragLongitude, converged.dragLatitude, 5, 0.5);
+        if (!converged.alarm)
+        {
+            throw new IllegalStateException("drag fix didn't alarm");
+        }
+        return converged.alarm;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH frame time of AnchorView geometry before and after layer cache.
+ *
+ * <p>fullFrame is a frame without layer cache: polygon, path and whole
+ * track are projected again. layeredFrame is a frame with layer cache when
+ * one fix has arrived: transform is checked and the new fix is projected.
+ * Track thinning makes layeredFrame occasionally project whole track, as in
+ * the view. Canvas calls are not included. On a device onDraw time
+ * including canvas is in view.draw timer of service metrics.
+ *
+ * <p>Usage: mvn -pl engine test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="FrameBenchmark -prof gc"
+ *
+ * @author Timo Vesalainen
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameBenchmark
+{
+    static final int TrackCapacity = 2048;
+    static final int Width = 1080;
+    static final int Height = 1920;
+    static final int AreaVertices = 64;
+    private static final double DegreeMeters = 60*1852;
+    /**
+     * View geometry fitted to a simulated swing track.
+     */
+    @State(Scope.Thread)
+    public static class Frame implements FixSink
+    {
+        final TrackStore store = new TrackStore(TrackCapacity);
+        final ScreenLines lines = new ScreenLines(2);
+        final double[] area = new double[2*AreaVertices];
+        VirtualClock clock;
+        SwingSimulator sim;
+        double lon0 = Double.NaN;
+        double lat0;
+        double lonScale;
+        double originX;
+        double scaleX;
+        double originY;
+        double scaleY;
+
+        @Setup
+        public void setup()
+        {
+            clock = new VirtualClock(0);
+            sim = new SwingSimulator(clock, this, 1);
+            for (int ii=0;ii<4*TrackCapacity;ii++)
+            {
+                step();
+            }
+            double minX = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            double[] xs = store.getXView();
+            double[] ys = store.getYView();
+            for (int ii=0;ii<store.size();ii++)
+            {
+                minX = Math.min(minX, xs[ii]);
+                maxX = Math.max(maxX, xs[ii]);
+                minY = Math.min(minY, ys[ii]);
+                maxY = Math.max(maxY, ys[ii]);
+            }
+            double cx = (minX + maxX)/2;
+            double cy = (minY + maxY)/2;
+            double r = Math.max(maxX - minX, maxY - minY)/2;
+            for (int ii=0;ii<AreaVertices;ii++)
+            {
+                double a = 2*Math.PI*ii/AreaVertices;
+                area[2*ii] = cx + r*Math.cos(a);
+                area[2*ii+1] = cy + r*Math.sin(a);
+            }
+            double scale = Math.min(Width, Height)/(2*r);
+            scaleX = scale;
+            scaleY = -scale;
+            originX = Width/2.0 - cx*scale;
+            originY = Height/2.0 + cy*scale;
+            lines.setTransform(originX, scaleX, originY, scaleY, Width, Height);
+        }
+
+        void step()
+        {
+            clock.advance(1000);
+            sim.step();
+        }
+
+        @Override
+        public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+        {
+            if (Double.isNaN(lon0))
+            {
+                lon0 = longitude;
+                lat0 = latitude;
+                lonScale = DegreeMeters*Math.cos(Math.toRadians(latitude));
+            }
+            store.add(time, (longitude - lon0)*lonScale, (latitude - lat0)*DegreeMeters, accuracy, speed);
+        }
+    }
+
+    @Benchmark
+    public int fullFrame(Frame frame)
+    {
+        ScreenLines lines = frame.lines;
+        lines.invalidate();
+        int len = lines.projectPolygon(frame.area, AreaVertices);
+        len += lines.projectPath(frame.area, AreaVertices);
+        lines.updateTrack(frame.store);
+        return len + lines.getTrackLength();
+    }
+
+    @Benchmark
+    public int layeredFrame(Frame frame)
+    {
+        frame.step();
+        ScreenLines lines = frame.lines;
+        lines.setTransform(frame.originX, frame.scaleX, frame.originY, frame.scaleY, Width, Height);
+        return lines.getTrackLength() - lines.updateTrack(frame.store);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class HampelFilterTest
+{
+    private static final double Longitude = 24.9;
+    private static final double Latitude = 60.1;
+    private static final double DegreeMeters = 60*1852;
+    private final HampelFilter filter = new HampelFilter();
+    private long time;
+
+    @Test
+    public void testOutlier()
+    {
+        fill();
+        assertFalse(accept(50, 1000, 5));
+        assertTrue(accept(1, 1000, 5));
+        assertEquals(1, filter.getRejected());
+    }
+    /**
+     * Jump within accuracy factor times accuracy is accepted.
+     */
+    @Test
+    public void testAccuracy()
+    {
+        fill();
+        assertFalse(accept(15, 1000, 5));
+        assertTrue(accept(15, 1000, 10));
+        assertTrue(accept(0, 1000, Double.NaN));
+    }
+    /**
+     * Jump that boat can drag at drag speed since oldest fix in window is
+     * accepted.
+     */
+    @Test
+    public void testDragSpeed()
+    {
+        fill();
+        assertFalse(accept(50, 1000, 5));
+        assertTrue(accept(50, 60000, 5));
+        fill();
+        filter.setDragSpeed(0.1);
+        assertFalse(accept(50, 60000, 5));
+    }
+
+    private void fill()
+    {
+        for (int ii=0;ii<7;ii++)
+        {
+            assertTrue(accept(ii % 2, 1000, 5));
+        }
+    }
+
+    private boolean accept(double north, long dt, double accuracy)
+    {
+        time += dt;
+        return filter.accept(time, Longitude, Latitude + north/DegreeMeters, accuracy, Double.NaN);
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates watch settings with randomized simulated anchorages. Each run is
+ * an independent SimulatedAnchorage in virtual time with random swing,
+ * noise, accuracy outages and drag start. Alarms go through the same
+ * FixIngest as in AnchorWatchService. Runs are split over ForkJoinPool and
+ * write only their own result slots.
+ *
+ * <p>With -x the first scenario is run with 1, 2, 4 ... parallelism threads
+ * and wall time and speedup against one thread are printed.
+ *
+ * <p>Usage: MonteCarlo [-n runs] [-h hours] [-s seed] [-p parallelism] [-x]
+ * [-a minAccuracy,...] [-t accuracyAlarmMinutes,...] [-m maxSleepSeconds,...]
+ *
+ * @author Timo Vesalainen
+ */
+public class MonteCarlo
+{
+    private final long durationMillis;
+    private final int runs;
+    private final long seed;
+
+    public MonteCarlo(long durationMillis, int runs, long seed)
+    {
+        this.durationMillis = durationMillis;
+        this.runs = runs;
+        this.seed = seed;
+    }
+    /**
+     * Runs all runs with given settings. Same seed gives same anchorages for
+     * every scenario.
+     * @param pool
+     * @param scenario
+     * @return 
+     */
+    public Result evaluate(ForkJoinPool pool, Scenario scenario)
+    {
+        Result result = new Result(scenario, runs, durationMillis);
+        pool.invoke(new Batch(scenario, result, 0, runs));
+        result.finish();
+        return result;
+    }
+
+    /**
+     * Runs scenario with 1, 2, 4 ... maxParallelism threads and prints wall
+     * time and speedup against one thread. One untimed single thread
+     * evaluation is run first for warm up.
+     * @param scenario
+     * @param maxParallelism 
+     * @throws IllegalStateException if result depends on thread count.
+     */
+    public void sweep(Scenario scenario, int maxParallelism)
+    {
+        ForkJoinPool warmup = new ForkJoinPool(1);
+        String expected = evaluate(warmup, scenario).toString();
+        warmup.shutdown();
+        System.out.println(expected);
+        double base = Double.NaN;
+        int parallelism = 1;
+        while (true)
+        {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            long t0 = System.nanoTime();
+            String got = evaluate(pool, scenario).toString();
+            double seconds = (System.nanoTime() - t0)/1e9;
+            pool.shutdown();
+            if (!expected.equals(got))
+            {
+                throw new IllegalStateException("result changed with "+parallelism+" threads: "+got);
+            }
+            if (parallelism == 1)
+            {
+                base = seconds;
+            }
+            System.out.printf("threads=%3d time=%7.2f s speedup=%5.2f efficiency=%4.0f%%%n",
+                    parallelism, seconds, base/seconds, 100*base/seconds/parallelism);
+            if (parallelism == maxParallelism)
+            {
+                break;
+            }
+            parallelism = Math.min(2*parallelism, maxParallelism);
+        }
+    }
+
+    private void run(Scenario scenario, Result result, int index)
+    {
+        Random random = new Random(seed*1000003+index);
+        SimulatedAnchorage sa = new SimulatedAnchorage(0, random.nextLong());
+        FixIngest ingest = sa.getIngest();
+        AnchorWatchEngine engine = ingest.getEngine();
+        engine.setMinAccuracy(scenario.minAccuracy);
+        engine.getSleepPolicy().setMaxSleepMillis(scenario.maxSleepMillis);
+        ingest.setAccuracyAlarmMillis(scenario.accuracyAlarmMillis);
+        SwingSimulator sim = sa.getSimulator();
+        sim.setRode(15+random.nextDouble()*45);
+        sim.setWindDirection(random.nextDouble()*360);
+        sim.setSwingAmplitude(10+random.nextDouble()*50);
+        sim.setSwingPeriod(120000+(long)(random.nextDouble()*900000));
+        sim.setNoise(1+random.nextDouble()*4);
+        sim.setAccuracy(3+random.nextDouble()*5);
+        long outagePeriod = 3600000+(long)(random.nextDouble()*6*3600000);
+        sim.setOutage(outagePeriod, 60000+(long)(random.nextDouble()*1200000), 20+random.nextDouble()*80);
+        long dragStart = durationMillis/4+(long)(random.nextDouble()*durationMillis/2);
+        sim.setDrag(dragStart, 0.2+random.nextDouble()*0.8);
+        sa.run(durationMillis);
+        result.falseAlarms[index] = sa.getFalseAlarms();
+        result.accuracyAlarms[index] = ingest.getAccuracyAlarms();
+        result.dragMillis[index] = dragStart;
+        long detection = sa.getDetection();
+        result.latencies[index] = detection == Long.MAX_VALUE ? Long.MAX_VALUE : detection - dragStart;
+        result.gpsOnMillis[index] = sa.getGpsOnMillis();
+    }
+
+    private class Batch extends RecursiveAction
+    {
+        private final Scenario scenario;
+        private final Result result;
+        private final int from;
+        private final int to;
+
+        public Batch(Scenario scenario, Result result, int from, int to)
+        {
+            this.scenario = scenario;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from == 1)
+            {
+                run(scenario, result, from);
+            }
+            else
+            {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(scenario, result, from, mid), new Batch(scenario, result, mid, to));
+            }
+        }
+    }
+
+    public static class Scenario
+    {
+        private final double minAccuracy;
+        private final long accuracyAlarmMillis;
+        private final long maxSleepMillis;
+
+        public Scenario(double minAccuracy, long accuracyAlarmMillis, long maxSleepMillis)
+        {
+            this.minAccuracy = minAccuracy;
+            this.accuracyAlarmMillis = accuracyAlarmMillis;
+            this.maxSleepMillis = maxSleepMillis;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("acc=%4.0fm alarm=%3dmin sleep=%4ds", minAccuracy, accuracyAlarmMillis/60000, maxSleepMillis/1000);
+        }
+    }
+    /**
+     * Per run results of one scenario. Missed drag has latency
+     * Long.MAX_VALUE.
+     */
+    public static class Result
+    {
+        private final Scenario scenario;
+        private final long durationMillis;
+        private final long[] falseAlarms;
+        private final long[] accuracyAlarms;
+        private final long[] dragMillis;
+        private final long[] latencies;
+        private final long[] gpsOnMillis;
+
+        private Result(Scenario scenario, int runs, long durationMillis)
+        {
+            this.scenario = scenario;
+            this.durationMillis = durationMillis;
+            this.falseAlarms = new long[runs];
+            this.accuracyAlarms = new long[runs];
+            this.dragMillis = new long[runs];
+            this.latencies = new long[runs];
+            this.gpsOnMillis = new long[runs];
+        }
+
+        private void finish()
+        {
+            Arrays.sort(latencies);
+        }
+        /**
+         * Returns false anchor alarms per day of anchorage before drag.
+         * @return 
+         */
+        public double getFalseAlarmRate()
+        {
+            return sum(falseAlarms)*86400000.0/sum(dragMillis);
+        }
+        /**
+         * Returns accuracy alarms per day.
+         * @return 
+         */
+        public double getAccuracyAlarmRate()
+        {
+            return sum(accuracyAlarms)*86400000.0/(durationMillis*latencies.length);
+        }
+
+        public double getMissedRate()
+        {
+            int missed = 0;
+            for (long l : latencies)
+            {
+                if (l == Long.MAX_VALUE)
+                {
+                    missed++;
+                }
+            }
+            return (double)missed/latencies.length;
+        }
+        /**
+         * Returns drag detection latency percentile in millis. Missed drags
+         * are included as Long.MAX_VALUE.
+         * @param p 0 - 1
+         * @return 
+         */
+        public long getLatencyPercentile(double p)
+        {
+            int index = (int) Math.min(latencies.length-1, Math.floor(p*latencies.length));
+            return latencies[index];
+        }
+        /**
+         * Returns estimated fraction of time GPS was on.
+         * @return 
+         */
+        public double getGpsOnFraction()
+        {
+            return (double)sum(gpsOnMillis)/(durationMillis*latencies.length);
+        }
+
+        public Scenario getScenario()
+        {
+            return scenario;
+        }
+
+        private static long sum(long[] arr)
+        {
+            long s = 0;
+            for (long l : arr)
+            {
+                s += l;
+            }
+            return s;
+        }
+
+        private static String minutes(long millis)
+        {
+            if (millis == Long.MAX_VALUE)
+            {
+                return "   miss";
+            }
+            return String.format("%7.1f", millis/60000.0);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s false/day=%6.3f accuracy/day=%6.2f missed=%5.1f%% p50=%s p90=%s p99=%s gps=%5.1f%%",
+                    scenario,
+                    getFalseAlarmRate(),
+                    getAccuracyAlarmRate(),
+                    100*getMissedRate(),
+                    minutes(getLatencyPercentile(0.5)),
+                    minutes(getLatencyPercentile(0.9)),
+                    minutes(getLatencyPercentile(0.99)),
+                    100*getGpsOnFraction()
+                    );
+        }
+    }
+
+    private static double[] parseList(String list)
+    {
+        String[] parts = list.split(",");
+        double[] arr = new double[parts.length];
+        for (int ii=0;ii<parts.length;ii++)
+        {
+            arr[ii] = Double.parseDouble(parts[ii].trim());
+        }
+        return arr;
+    }
+
+    public static void main(String... args)
+    {
+        int runs = 1000;
+        double hours = 24;
+        long seed = 1;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean sweep = false;
+        double[] accuracies = {5, 10, 20};
+        double[] alarmMinutes = {5};
+        double[] sleepSeconds = {30, 60, 120};
+        for (int ii=0;ii<args.length;ii++)
+        {
+            switch (args[ii])
+            {
+                case "-n":
+                    runs = Integer.parseInt(args[++ii]);
+                    break;
+                case "-h":
+                    hours = Double.parseDouble(args[++ii]);
+                    break;
+                case "-s":
+                    seed = Long.parseLong(args[++ii]);
+                    break;
+                case "-p":
+                    parallelism = Integer.parseInt(args[++ii]);
+                    break;
+                case "-x":
+                    sweep = true;
+                    break;
+                case "-a":
+                    accuracies = parseList(args[++ii]);
+                    break;
+                case "-t":
+                    alarmMinutes = parseList(args[++ii]);
+                    break;
+                case "-m":
+                    sleepSeconds = parseList(args[++ii]);
+                    break;
+                default:
+                    System.err.println("usage: MonteCarlo [-n runs] [-h hours] [-s seed] [-p parallelism] [-x] [-a minAccuracy,...] [-t accuracyAlarmMinutes,...] [-m maxSleepSeconds,...]");
+                    System.exit(1);
+            }
+        }
+        List<Scenario> scenarios = new ArrayList<>();
+        for (double a : accuracies)
+        {
+            for (double t : alarmMinutes)
+            {
+                for (double m : sleepSeconds)
+                {
+                    scenarios.add(new Scenario(a, (long)(t*60000), (long)(m*1000)));
+                }
+            }
+        }
+        MonteCarlo mc = new MonteCarlo((long)(hours*3600000), runs, seed);
+        if (sweep)
+        {
+            mc.sweep(scenarios.get(0), parallelism);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long t0 = System.nanoTime();
+        for (Scenario scenario : scenarios)
+        {
+            System.out.println(mc.evaluate(pool, scenario));
+        }
+        double seconds = (System.nanoTime() - t0)/1e9;
+        pool.shutdown();
+        System.out.printf("%d runs of %.1f h in %.1f s with %d threads, %.1f runs/s%n",
+                runs*scenarios.size(), hours, seconds, parallelism, runs*scenarios.size()/seconds);
+    }
+}
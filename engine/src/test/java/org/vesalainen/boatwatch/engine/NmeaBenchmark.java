@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Measures NmeaParser throughput in sentences per second, first from
+ * memory and then through NmeaClient from a local TCP server standing in
+ * for chart plotter.
+ *
+ * <p>Usage: NmeaBenchmark [-e epochs] [-r rounds]
+ *
+ * @author Timo Vesalainen
+ */
+public class NmeaBenchmark implements FixSink
+{
+    private volatile long fixes;
+    private long lastTime;
+    private long disorder;
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        if (time <= lastTime)
+        {
+            disorder++;
+        }
+        lastTime = time;
+        fixes++;
+    }
+    /**
+     * Creates GGA, GSA and RMC sentences for each one second epoch.
+     * @param epochs
+     * @return 
+     */
+    static byte[] generate(int epochs)
+    {
+        StringBuilder sb = new StringBuilder();
+        double lat = 6007.1234;
+        double lon = 2458.5678;
+        for (int ii=0;ii<epochs;ii++)
+        {
+            int s = ii % 86400;
+            String time = String.format("%02d%02d%02d.00", s/3600, s/60%60, s%60);
+            String la = String.format("%09.4f", lat+(ii%100)*0.0001);
+            String lo = String.format("%010.4f", lon+(ii%77)*0.0001);
+            sentence(sb, "GPGGA,"+time+","+la+",N,"+lo+",E,1,08,0.9,5.4,M,17.9,M,,");
+            sentence(sb, "GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,0.9,2.1");
+            sentence(sb, "GPRMC,"+time+",A,"+la+",N,"+lo+",E,000.4,084.4,"+String.format("%02d", 1+ii/86400%28)+"0615,003.1,W");
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void sentence(StringBuilder sb, String body)
+    {
+        int sum = 0;
+        for (int ii=0;ii<body.length();ii++)
+        {
+            sum ^= body.charAt(ii);
+        }
+        sb.append('$').append(body).append('*').append(String.format("%02X", sum)).append("\r\n");
+    }
+
+    public static void main(String... args) throws IOException, InterruptedException
+    {
+        int epochs = 100000;
+        int rounds = 10;
+        for (int ii=0;ii<args.length;ii++)
+        {
+            switch (args[ii])
+            {
+                case "-e":
+                    epochs = Integer.parseInt(args[++ii]);
+                    break;
+                case "-r":
+                    rounds = Integer.parseInt(args[++ii]);
+                    break;
+                default:
+                    System.err.println("usage: NmeaBenchmark [-e epochs] [-r rounds]");
+                    System.exit(1);
+            }
+        }
+        final byte[] data = generate(epochs);
+        Clock clock = new WallClock();
+        NmeaBenchmark sink = new NmeaBenchmark();
+        NmeaParser parser = new NmeaParser(clock, sink);
+        ByteBuffer bb = ByteBuffer.allocateDirect(data.length);
+        bb.put(data);
+        for (int round=0;round<rounds;round++)
+        {
+            parser.reset();
+            bb.clear();
+            long s0 = parser.getSentences();
+            long t0 = System.nanoTime();
+            parser.parse(bb);
+            double seconds = (System.nanoTime() - t0)/1e9;
+            System.out.printf("memory: %.0f sentences/s%n", (parser.getSentences()-s0)/seconds);
+        }
+        System.out.println("sentences="+parser.getSentences()+" errors="+parser.getErrors()+" fixes="+parser.getFixes()+" disorder="+sink.disorder);
+
+        final int sendRounds = rounds;
+        final ServerSocketChannel server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread sender = new Thread(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                try (SocketChannel sc = server.accept())
+                {
+                    for (int round=0;round<sendRounds;round++)
+                    {
+                        sc.write(ByteBuffer.wrap(data));
+                    }
+                }
+                catch (IOException ex)
+                {
+                    ex.printStackTrace();
+                }
+            }
+        }, "NmeaStandIn");
+        sender.start();
+        NmeaBenchmark netSink = new NmeaBenchmark();
+        NmeaParser netParser = new NmeaParser(clock, netSink);
+        NmeaClient client = new NmeaClient(netParser, InetAddress.getLoopbackAddress().getHostAddress(), server.socket().getLocalPort(), false);
+        long expected = (long)epochs*sendRounds;
+        long t0 = System.nanoTime();
+        client.start();
+        while (netSink.fixes < expected && sender.isAlive())
+        {
+            Thread.sleep(1);
+        }
+        sender.join();
+        while (client.getBytes() < (long)data.length*sendRounds)
+        {
+            Thread.sleep(1);
+        }
+        double seconds = (System.nanoTime() - t0)/1e9;
+        client.close();
+        server.close();
+        System.out.printf("tcp: %.0f sentences/s %d bytes%n", netParser.getSentences()/seconds, client.getBytes());
+        System.out.println("sentences="+netParser.getSentences()+" errors="+netParser.getErrors()+" fixes="+netParser.getFixes());
+    }
+}
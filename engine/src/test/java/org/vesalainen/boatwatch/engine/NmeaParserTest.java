@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.vesalainen.navi.AnchorWatch;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class NmeaParserTest implements FixSink
+{
+    private static final double Uere = 5;
+    private static final double KnotsToMps = 1852.0/3600.0;
+    private static final double Epsilon = 1e-9;
+    private final NmeaParser parser = new NmeaParser(new VirtualClock(1433116800000L), this);
+    private final List<double[]> fixes = new ArrayList<>();
+
+    public NmeaParserTest()
+    {
+        parser.setUere(Uere);
+    }
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        fixes.add(new double[] {time, longitude, latitude, accuracy, speed});
+    }
+    /**
+     * Every epoch of GGA, GSA and RMC gives one fix with HDOP from GGA and
+     * speed from RMC.
+     */
+    @Test
+    public void testOneFixPerEpoch()
+    {
+        parse(NmeaBenchmark.generate(100));
+        parser.flush();
+        assertEquals(100, fixes.size());
+        assertEquals(100, parser.getFixes());
+        for (int ii=0;ii<fixes.size();ii++)
+        {
+            double[] f = fixes.get(ii);
+            if (ii > 0)
+            {
+                assertEquals(1000, f[0] - fixes.get(ii-1)[0], 0);
+            }
+            assertEquals(0.9*Uere, f[3], Epsilon);
+            assertEquals(0.4*KnotsToMps, f[4], Epsilon);
+        }
+    }
+    /**
+     * First epoch is emitted when next starts. After that epoch is emitted
+     * as soon as it has sentence types of previous epoch.
+     */
+    @Test
+    public void testEmittedWhenCollected()
+    {
+        parse(gga("120000.00", "0.9"));
+        parse(rmc("120000.00", "001.0"));
+        assertEquals(0, fixes.size());
+        parse(gga("120001.00", "1.1"));
+        assertEquals(1, fixes.size());
+        assertEquals(0.9*Uere, fixes.get(0)[3], Epsilon);
+        assertEquals(KnotsToMps, fixes.get(0)[4], Epsilon);
+        parse(rmc("120001.00", "002.0"));
+        assertEquals(2, fixes.size());
+        assertEquals(1.1*Uere, fixes.get(1)[3], Epsilon);
+        assertEquals(2*KnotsToMps, fixes.get(1)[4], Epsilon);
+        parse(gll("120001.00"));
+        parse(rmc("120001.00", "003.0"));
+        assertEquals(2, fixes.size());
+    }
+    /**
+     * Epoch without HDOP has unknown accuracy. HDOP isn't carried over from
+     * previous epoch.
+     */
+    @Test
+    public void testUnknownAccuracy()
+    {
+        parse(gga("120000.00", "0.9"));
+        parse(rmc("120001.00", "001.0"));
+        parse(rmc("120002.00", "001.0"));
+        parser.flush();
+        assertEquals(3, fixes.size());
+        assertEquals(0.9*Uere, fixes.get(0)[3], Epsilon);
+        assertTrue(Double.isNaN(fixes.get(1)[3]));
+        assertTrue(Double.isNaN(fixes.get(2)[3]));
+    }
+    /**
+     * RMC only stream has no HDOP. Its fixes pass engine with default
+     * unknown accuracy.
+     */
+    @Test
+    public void testRmcOnlyToEngine()
+    {
+        final AnchorWatchEngine engine = new AnchorWatchEngine(new AnchorWatch());
+        engine.setMinAccuracy(15);
+        NmeaParser rmcParser = new NmeaParser(new VirtualClock(1433116800000L), new FixSink() 
+        {
+            @Override
+            public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+            {
+                engine.update(time, longitude, latitude, accuracy, speed);
+            }
+        });
+        for (int ii=0;ii<10;ii++)
+        {
+            rmcParser.parse(ByteBuffer.wrap(rmc(String.format("1200%02d.00", ii), "000.5")));
+        }
+        rmcParser.flush();
+        assertEquals(10, rmcParser.getFixes());
+        assertEquals(10, engine.getUnknown());
+        assertEquals(10, engine.getAccepted());
+        assertEquals(0, engine.getRejected());
+    }
+    /**
+     * GSA before position sentences belongs to the coming epoch. GGA HDOP
+     * is preferred.
+     */
+    @Test
+    public void testGsa()
+    {
+        parse(gsa("1.5"));
+        parse(rmc("120000.00", "001.0"));
+        parse(gsa("2.5"));
+        parse(rmc("120001.00", "001.0"));
+        parse(gga("120001.00", "0.7"));
+        parser.flush();
+        assertEquals(2, fixes.size());
+        assertEquals(1.5*Uere, fixes.get(0)[3], Epsilon);
+        assertEquals(0.7*Uere, fixes.get(1)[3], Epsilon);
+    }
+
+    private void parse(byte[] data)
+    {
+        parser.parse(ByteBuffer.wrap(data));
+    }
+
+    private static byte[] gga(String time, String hdop)
+    {
+        return sentence("GPGGA,"+time+",6007.1234,N,02458.5678,E,1,08,"+hdop+",5.4,M,17.9,M,,");
+    }
+
+    private static byte[] rmc(String time, String knots)
+    {
+        return sentence("GPRMC,"+time+",A,6007.1234,N,02458.5678,E,"+knots+",084.4,010615,003.1,W");
+    }
+
+    private static byte[] gll(String time)
+    {
+        return sentence("GPGLL,6007.1234,N,02458.5678,E,"+time+",A");
+    }
+
+    private static byte[] gsa(String hdop)
+    {
+        return sentence("GPGSA,A,3,04,05,,09,12,,,24,,,,,2.5,"+hdop+",2.1");
+    }
+
+    private static byte[] sentence(String body)
+    {
+        int sum = 0;
+        for (int ii=0;ii<body.length();ii++)
+        {
+            sum ^= body.charAt(ii);
+        }
+        return ("$"+body+"*"+String.format("%02X", sum)+"\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
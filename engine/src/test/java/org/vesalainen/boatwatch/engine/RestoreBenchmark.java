@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vesalainen.navi.AnchorWatch;
+
+/**
+ * JMH cold-start restore of the same watch state through old Java
+ * serialization and through snapshot.
+ *
+ * <p>serialized reads AnchorWatch from anchorwatch.ser with
+ * ObjectInputStream, as service did before snapshot. snapshot reads
+ * anchorwatch.snp with SnapshotCodec and replays the track to a new
+ * AnchorWatchEngine, as service does now. Each fork measures one restore
+ * in a fresh JVM, so class loading and interpretation are included.
+ *
+ * <p>Usage: mvn -pl engine test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="RestoreBenchmark"
+ *
+ * @author Timo Vesalainen
+ */
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RestoreBenchmark
+{
+    private static final int SnapshotTrackCapacity = 16384;
+    /**
+     * Watch state built from simulated swing track and saved both ways.
+     */
+    @State(Scope.Benchmark)
+    public static class Saved implements FixSink
+    {
+        @Param({"3600", "16384"})
+        int fixes;
+        AnchorWatch watch;
+        AnchorWatchEngine engine;
+        Snapshot snapshot;
+        File serFile;
+        File snpFile;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException
+        {
+            watch = new AnchorWatch();
+            engine = new AnchorWatchEngine(watch);
+            snapshot = new Snapshot(SnapshotTrackCapacity);
+            VirtualClock clock = new VirtualClock(0);
+            SwingSimulator sim = new SwingSimulator(clock, this, 1);
+            for (int ii=0;ii<fixes;ii++)
+            {
+                clock.advance(1000);
+                sim.step();
+            }
+            watch.setAnchorLocation();
+            snapshot.anchorSet();
+            serFile = File.createTempFile("anchorwatch", ".ser");
+            serFile.deleteOnExit();
+            try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(serFile)))
+            {
+                out.writeObject(watch);
+            }
+            snpFile = File.createTempFile("anchorwatch", ".snp");
+            snpFile.deleteOnExit();
+            new SnapshotCodec().write(snapshot, snpFile);
+        }
+
+        @Override
+        public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+        {
+            engine.replay(time, longitude, latitude, accuracy, speed);
+            snapshot.fix(time, longitude, latitude, accuracy, speed);
+        }
+    }
+
+    @Benchmark
+    public AnchorWatch serialized(Saved saved) throws IOException, ClassNotFoundException
+    {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(saved.serFile)))
+        {
+            return (AnchorWatch) in.readObject();
+        }
+    }
+
+    @Benchmark
+    public AnchorWatchEngine snapshot(Saved saved) throws IOException
+    {
+        Snapshot snapshot = new Snapshot(SnapshotTrackCapacity);
+        new SnapshotCodec().read(saved.snpFile, snapshot);
+        final AnchorWatch watch = new AnchorWatch();
+        final AnchorWatchEngine engine = new AnchorWatchEngine(watch);
+        snapshot.replay(new TrackJournal.Replayer() 
+        {
+            @Override
+            public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+            {
+                engine.replay(time, longitude, latitude, accuracy, speed);
+            }
+
+            @Override
+            public void anchorSet(long time)
+            {
+                watch.setAnchorLocation();
+            }
+        });
+        return engine;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class ScreenLinesTest
+{
+    private static final int Capacity = 2048;
+    private static final int Width = 1080;
+    private static final int Height = 1920;
+    private static final int Frames = 200000;
+    private static final int ZoomFrames = 1000;
+    private static final long MaxAllocated = 4096;
+    private static final double[] Square = new double[] {0, 0, 10, 0, 10, 10, 0, 10};
+    private final ScreenLines lines = new ScreenLines(2);
+    private final TrackStore store = new TrackStore(Capacity);
+    private final double[] area = new double[128];
+    private long time;
+
+    public ScreenLinesTest()
+    {
+        for (int ii=0;ii<64;ii++)
+        {
+            double a = 2*Math.PI*ii/64;
+            area[2*ii] = 50*Math.cos(a);
+            area[2*ii+1] = 50*Math.sin(a);
+        }
+    }
+
+    @Test
+    public void testPolygon()
+    {
+        lines.setTransform(100, 2, 500, -2, Width, Height);
+        int len = lines.projectPolygon(Square, 4);
+        assertEquals(16, len);
+        float[] l = lines.getPolygonLines();
+        assertLine(l, 0, 100, 480, 100, 500);
+        assertLine(l, 4, 100, 500, 120, 500);
+        assertLine(l, 8, 120, 500, 120, 480);
+        assertLine(l, 12, 120, 480, 100, 480);
+    }
+
+    @Test
+    public void testPath()
+    {
+        lines.setTransform(100, 2, 500, -2, Width, Height);
+        int len = lines.projectPath(Square, 4);
+        assertEquals(12, len);
+        float[] l = lines.getPathLines();
+        assertLine(l, 0, 100, 500, 120, 500);
+        assertLine(l, 8, 120, 480, 100, 480);
+        lines.polygonChanged();
+        assertEquals(0, lines.projectPath(Square, 1));
+    }
+
+    @Test
+    public void testCached()
+    {
+        double[] d = Square.clone();
+        assertTrue(lines.setTransform(100, 2, 500, -2, Width, Height));
+        lines.projectPolygon(d, 4);
+        d[0] = 5;
+        lines.projectPolygon(d, 4);
+        assertEquals(480, lines.getPolygonLines()[1], 0);
+        assertEquals(100, lines.getPolygonLines()[2], 0);
+        assertFalse(lines.setTransform(100, 2, 500, -2, Width, Height));
+        lines.projectPolygon(d, 4);
+        assertEquals(100, lines.getPolygonLines()[2], 0);
+        lines.polygonChanged();
+        lines.projectPolygon(d, 4);
+        assertEquals(110, lines.getPolygonLines()[2], 0);
+        assertTrue(lines.setTransform(0, 2, 500, -2, Width, Height));
+        lines.projectPolygon(d, 4);
+        assertEquals(10, lines.getPolygonLines()[2], 0);
+    }
+
+    @Test
+    public void testTrack()
+    {
+        lines.setTransform(Width/2, 1, Height/2, -1, Width, Height);
+        for (int ii=0;ii<100;ii++)
+        {
+            add(ii);
+        }
+        assertTrue(lines.isTrackReset(store));
+        assertEquals(0, lines.updateTrack(store));
+        int len = lines.getTrackLength();
+        assertTrue(len > 0);
+        assertFalse(lines.isTrackReset(store));
+        assertEquals(len, lines.updateTrack(store));
+        for (int ii=100;ii<200;ii++)
+        {
+            add(ii);
+        }
+        assertEquals(len, lines.updateTrack(store));
+        assertTrue(lines.getTrackLength() > len);
+        store.clear();
+        assertTrue(lines.isTrackReset(store));
+        assertEquals(0, lines.updateTrack(store));
+        assertEquals(0, lines.getTrackLength());
+    }
+
+    @Test
+    public void testThinned()
+    {
+        lines.setTransform(Width/2, 1, Height/2, -1, Width, Height);
+        int generation = store.getGeneration();
+        int ii = 0;
+        while (store.getGeneration() == generation)
+        {
+            add(ii++);
+            if (store.getGeneration() == generation)
+            {
+                lines.updateTrack(store);
+            }
+        }
+        assertTrue(lines.isTrackReset(store));
+        assertEquals(0, lines.updateTrack(store));
+    }
+    /**
+     * Runs frames as AnchorView does, with a new fix per frame and zoom
+     * every ZoomFrames frames, and checks that frames don't allocate after
+     * arrays have reached track capacity. MaxAllocated covers allocation
+     * counter itself, while one object per frame would be megabytes.
+     */
+    @Test
+    public void testFrameAllocation()
+    {
+        frames(4*Capacity);
+        long allocated = allocated();
+        frames(Frames);
+        allocated = allocated() - allocated;
+        if (allocated >= 0)
+        {
+            assertTrue("allocated "+allocated+" bytes", allocated < MaxAllocated);
+        }
+    }
+
+    private void frames(int count)
+    {
+        for (int ii=0;ii<count;ii++)
+        {
+            add(ii);
+            double scale = (ii / ZoomFrames) % 2 == 0 ? 5 : 10;
+            lines.setTransform(Width/2, scale, Height/2, -scale, Width, Height);
+            lines.projectPolygon(area, 64);
+            lines.projectPath(area, 64);
+            lines.updateTrack(store);
+        }
+    }
+
+    private void add(int ii)
+    {
+        time += 1000;
+        double a = ii*0.01;
+        store.add(time, 40*Math.cos(a) + Math.sin(ii*1.3), 40*Math.sin(a) + Math.cos(ii*0.7), 5, 0);
+    }
+
+    private static void assertLine(float[] l, int off, float x1, float y1, float x2, float y2)
+    {
+        assertEquals(x1, l[off], 1e-4);
+        assertEquals(y1, l[off+1], 1e-4);
+        assertEquals(x2, l[off+2], 1e-4);
+        assertEquals(y2, l[off+3], 1e-4);
+    }
+    /**
+     * Returns bytes allocated by current thread or -1 if not supported.
+     */
+    private static long allocated()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled())
+            {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares settings lookups at startup. Old way copied the whole preference
+ * map for every looked up key, like SharedPreferences.getAll does. New way
+ * builds SettingsSnapshot once and reads it. Startup attaches service,
+ * fragment and distance picker, which look up 11, 2 and 1 keys.
+ *
+ * <p>Attaching the service is also compared as reflective dispatch, which
+ * finds annotated methods and invokes them with boxed values, and as
+ * SettingBinder dispatch.
+ *
+ * <p>Android Settings.attach time is logged and available from
+ * Settings.getAttachNanos.
+ *
+ * <p>Usage: SettingsBenchmark [rounds]
+ *
+ * @author Timo Vesalainen
+ */
+public class SettingsBenchmark
+{
+    private static final String[] Service = new String[] {
+        "pref_simulate", "pref_location_source", "pref_nmea_address", 
+        "pref_record_track", "pref_accuracy", "pref_accuracy_alarm_time", 
+        "pref_mute_time", "pref_alarmtone", "pref_drag_speed", 
+        "pref_gps_max_sleep_time", "pref_distance_unit"
+    };
+    private static final String[] Fragment = new String[] {"pref_simulate", "pref_distance_unit"};
+    private static final String[] Picker = new String[] {"pref_distance_unit"};
+    private static int sink;
+
+    @Retention(RetentionPolicy.RUNTIME)
+    private @interface Key
+    {
+        String value();
+    }
+
+    public static class Target
+    {
+        private int sum;
+
+        @Key("pref_simulate")
+        public void setSimulate(boolean b)
+        {
+            sum += b ? 1 : 0;
+        }
+        @Key("pref_location_source")
+        public void setSource(String s)
+        {
+            sum += s.length();
+        }
+        @Key("pref_nmea_address")
+        public void setNmeaAddress(String s)
+        {
+            sum += s.length();
+        }
+        @Key("pref_record_track")
+        public void setRecordTrack(boolean b)
+        {
+            sum += b ? 1 : 0;
+        }
+        @Key("pref_accuracy")
+        public void setAccuracy(int i)
+        {
+            sum += i;
+        }
+        @Key("pref_accuracy_alarm_time")
+        public void setAccuracyAlarmTime(int i)
+        {
+            sum += i;
+        }
+        @Key("pref_mute_time")
+        public void setMuteTime(int i)
+        {
+            sum += i;
+        }
+        @Key("pref_alarmtone")
+        public void setAlarmTone(String s)
+        {
+            sum += s.length();
+        }
+        @Key("pref_drag_speed")
+        public void setDragSpeed(int i)
+        {
+            sum += i;
+        }
+        @Key("pref_gps_max_sleep_time")
+        public void setGPSMaxSleep(int i)
+        {
+            sum += i;
+        }
+    }
+
+    private static final SettingBinder<Target> TargetBinder = new SettingBinder<Target>(
+            "pref_simulate", "pref_location_source", "pref_nmea_address",
+            "pref_record_track", "pref_accuracy", "pref_accuracy_alarm_time",
+            "pref_mute_time", "pref_alarmtone", "pref_drag_speed",
+            "pref_gps_max_sleep_time")
+    {
+        @Override
+        public void bind(Target target, String key, SettingsSnapshot settings)
+        {
+            switch (key)
+            {
+                case "pref_simulate":
+                    target.setSimulate(settings.getBoolean(key, false));
+                    break;
+                case "pref_location_source":
+                    target.setSource(settings.getString(key, ""));
+                    break;
+                case "pref_nmea_address":
+                    target.setNmeaAddress(settings.getString(key, ""));
+                    break;
+                case "pref_record_track":
+                    target.setRecordTrack(settings.getBoolean(key, false));
+                    break;
+                case "pref_accuracy":
+                    target.setAccuracy(settings.getInt(key, 0));
+                    break;
+                case "pref_accuracy_alarm_time":
+                    target.setAccuracyAlarmTime(settings.getInt(key, 0));
+                    break;
+                case "pref_mute_time":
+                    target.setMuteTime(settings.getInt(key, 0));
+                    break;
+                case "pref_alarmtone":
+                    target.setAlarmTone(settings.getString(key, ""));
+                    break;
+                case "pref_drag_speed":
+                    target.setDragSpeed(settings.getInt(key, 0));
+                    break;
+                case "pref_gps_max_sleep_time":
+                    target.setGPSMaxSleep(settings.getInt(key, 0));
+                    break;
+            }
+        }
+    };
+
+    private static void reflective(Target target, SettingsSnapshot settings) throws IllegalAccessException, InvocationTargetException
+    {
+        for (Method method : target.getClass().getMethods())
+        {
+            Key key = method.getAnnotation(Key.class);
+            if (key != null)
+            {
+                method.invoke(target, settings.get(key.value()));
+            }
+        }
+    }
+
+    private static Map<String,Object> preferences()
+    {
+        Map<String,Object> map = new HashMap<>();
+        map.put("pref_simulate", Boolean.FALSE);
+        map.put("pref_location_source", "gps");
+        map.put("pref_nmea_address", "192.168.0.1:10110");
+        map.put("pref_record_track", Boolean.TRUE);
+        map.put("pref_accuracy", 20);
+        map.put("pref_accuracy_alarm_time", 5);
+        map.put("pref_mute_time", 3);
+        map.put("pref_alarmtone", "content://settings/system/alarm_alert");
+        map.put("pref_drag_speed", 2);
+        map.put("pref_gps_max_sleep_time", 300);
+        map.put("pref_distance_unit", "m");
+        map.put("pref_unrelated_1", "x");
+        map.put("pref_unrelated_2", 1L);
+        return map;
+    }
+
+    private static void copying(Map<String,Object> prefs)
+    {
+        for (String[] keys : new String[][] {Service, Fragment, Picker})
+        {
+            for (String key : keys)
+            {
+                Map<String,Object> all = new HashMap<>(prefs);
+                sink += all.get(key).hashCode();
+            }
+        }
+    }
+
+    private static void snapshot(Map<String,Object> prefs)
+    {
+        SettingsSnapshot snapshot = SettingsSnapshot.of(prefs);
+        for (String[] keys : new String[][] {Service, Fragment, Picker})
+        {
+            for (String key : keys)
+            {
+                sink += snapshot.get(key).hashCode();
+            }
+        }
+    }
+
+    public static void main(String... args) throws IllegalAccessException, InvocationTargetException
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Map<String,Object> prefs = preferences();
+        for (int ii=0;ii<rounds;ii++)
+        {
+            copying(prefs);
+            snapshot(prefs);
+        }
+        long t0 = System.nanoTime();
+        for (int ii=0;ii<rounds;ii++)
+        {
+            copying(prefs);
+        }
+        long t1 = System.nanoTime();
+        for (int ii=0;ii<rounds;ii++)
+        {
+            snapshot(prefs);
+        }
+        long t2 = System.nanoTime();
+        SettingsSnapshot s = SettingsSnapshot.of(prefs);
+        long t3 = System.nanoTime();
+        for (int ii=0;ii<rounds;ii++)
+        {
+            s = s.with("pref_accuracy", ii);
+        }
+        long t4 = System.nanoTime();
+        System.out.printf("copying lookups: %.0f ns/startup%n", (double)(t1-t0)/rounds);
+        System.out.printf("snapshot lookups: %.0f ns/startup%n", (double)(t2-t1)/rounds);
+        System.out.printf("snapshot change: %.0f ns/change%n", (double)(t4-t3)/rounds);
+        Target target = new Target();
+        for (int ii=0;ii<rounds;ii++)
+        {
+            reflective(target, s);
+            TargetBinder.bindAll(target, s);
+        }
+        long t5 = System.nanoTime();
+        for (int ii=0;ii<rounds;ii++)
+        {
+            reflective(target, s);
+        }
+        long t6 = System.nanoTime();
+        for (int ii=0;ii<rounds;ii++)
+        {
+            TargetBinder.bindAll(target, s);
+        }
+        long t7 = System.nanoTime();
+        sink += target.sum;
+        System.out.printf("reflective attach: %.0f ns/attach%n", (double)(t6-t5)/rounds);
+        System.out.printf("binder attach: %.0f ns/attach%n", (double)(t7-t6)/rounds);
+        System.out.println("checksum "+sink);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.concurrent.Executor;
+import org.ejml.data.DenseMatrix64F;
+import org.vesalainen.boatwatch.engine.DeadlineScheduler.Deadline;
+import org.vesalainen.math.Circle;
+import org.vesalainen.math.ConvexPolygon;
+import org.vesalainen.navi.AnchorWatch;
+import org.vesalainen.navi.AnchorWatch.Watcher;
+import org.vesalainen.navi.SafeSector;
+
+/**
+ * Runs AnchorWatchEngine with SwingSimulator in virtual time. Fixes go
+ * through the same FixIngest as in AnchorWatchService, so that days of
+ * anchorage with every timer firing run in seconds. Alarms are muted as soon
+ * as they start.
+ *
+ * <p>Usage: SimulatedAnchorage [-d days] [-s seed] [-g dragHours] [-a minAccuracy]
+ *
+ * @author Timo Vesalainen
+ */
+public class SimulatedAnchorage implements FixSink, Watcher, FixIngest.Listener
+{
+    private static final long MinSleepMillis = 1000;
+    private static final long FixOnMillis = 15000;
+    private final VirtualClock clock;
+    private final DeadlineScheduler scheduler;
+    private final AnchorWatchEngine engine;
+    private final SwingSimulator simulator;
+    private final FixIngest ingest;
+    private long anchorSetMillis = 600000;
+    private long firstAlarm = Long.MAX_VALUE;
+    private long falseAlarms;
+    private long detection = Long.MAX_VALUE;
+    private long gpsOnMillis;
+    private final Deadline gps;
+    private final Deadline anchorSet;
+
+    public SimulatedAnchorage(long start, long seed)
+    {
+        clock = new VirtualClock(start);
+        scheduler = new DeadlineScheduler(clock, "SimulatedAnchorage");
+        clock.register(scheduler);
+        AnchorWatch watch = new AnchorWatch();
+        engine = new AnchorWatchEngine(watch);
+        engine.setMinAccuracy(10);
+        engine.getSleepPolicy().setMaxSleepMillis(60000);
+        ingest = new FixIngest(engine, scheduler, new Executor() 
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, this);
+        simulator = new SwingSimulator(clock, this, seed);
+        watch.addWatcher(this);
+        gps = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                simulator.step();
+                long sleep = Math.max(MinSleepMillis, engine.getSleepPolicy().getSleepMillis());
+                gpsOnMillis += Math.min(sleep, FixOnMillis);
+                gps.arm(sleep);
+            }
+        });
+        anchorSet = scheduler.create(new Runnable() 
+        {
+            @Override
+            public void run()
+            {
+                engine.getWatch().setAnchorLocation();
+            }
+        });
+    }
+    /**
+     * Runs simulation for given time.
+     * @param millis 
+     */
+    public void run(long millis)
+    {
+        gps.arm(0);
+        anchorSet.arm(anchorSetMillis);
+        clock.advance(millis);
+    }
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        ingest.fix(time, longitude, latitude, accuracy, speed);
+    }
+
+    @Override
+    public void alarm(double distance)
+    {
+        long time = clock.millis();
+        if (time >= simulator.getDragStart())
+        {
+            detection = Math.min(detection, time);
+        }
+        ingest.alarm(distance);
+    }
+
+    @Override
+    public void anchorAlarm(double distance)
+    {
+        long time = clock.millis();
+        if (time < simulator.getDragStart())
+        {
+            falseAlarms++;
+        }
+        firstAlarm = Math.min(firstAlarm, time);
+        ingest.muteAnchorAlarm();
+    }
+
+    @Override
+    public void accuracyAlarm()
+    {
+        ingest.muteAccuracyAlarm();
+    }
+
+    @Override
+    public void location(double x, double y, long time, double accuracy, double speed)
+    {
+        engine.getSleepPolicy().location(x, y, time, accuracy);
+    }
+
+    @Override
+    public void area(ConvexPolygon area)
+    {
+    }
+
+    @Override
+    public void outer(DenseMatrix64F path)
+    {
+    }
+
+    @Override
+    public void estimated(Circle estimated)
+    {
+    }
+
+    @Override
+    public void safeSector(SafeSector safe)
+    {
+        engine.getSleepPolicy().safeSector(safe);
+    }
+
+    @Override
+    public void suggestNextUpdateIn(double seconds, double meters)
+    {
+        engine.getSleepPolicy().suggest(seconds);
+    }
+
+    public VirtualClock getClock()
+    {
+        return clock;
+    }
+
+    public AnchorWatchEngine getEngine()
+    {
+        return engine;
+    }
+
+    public SwingSimulator getSimulator()
+    {
+        return simulator;
+    }
+
+    public FixIngest getIngest()
+    {
+        return ingest;
+    }
+
+    public void setAccuracyAlarmMillis(long accuracyAlarmMillis)
+    {
+        ingest.setAccuracyAlarmMillis(accuracyAlarmMillis);
+    }
+
+    public void setMuteMillis(long muteMillis)
+    {
+        ingest.setMuteMillis(muteMillis);
+    }
+
+    public long getAnchorAlarms()
+    {
+        return ingest.getAnchorAlarms();
+    }
+
+    public long getAccuracyAlarms()
+    {
+        return ingest.getAccuracyAlarms();
+    }
+
+    public long getResumes()
+    {
+        return ingest.getResumes();
+    }
+    /**
+     * Returns time of first anchor alarm or Long.MAX_VALUE if none.
+     * @return 
+     */
+    public long getFirstAlarm()
+    {
+        return firstAlarm;
+    }
+    /**
+     * Returns number of unmuted anchor alarms before drag start.
+     * @return 
+     */
+    public long getFalseAlarms()
+    {
+        return falseAlarms;
+    }
+    /**
+     * Returns time of first anchor alarm after drag start or Long.MAX_VALUE
+     * if drag was not detected.
+     * @return 
+     */
+    public long getDetection()
+    {
+        return detection;
+    }
+    /**
+     * Returns estimated GPS on-time. GPS is assumed to stay on for sleep
+     * times shorter than 15 seconds and to need 15 seconds for each fix
+     * otherwise.
+     * @return 
+     */
+    public long getGpsOnMillis()
+    {
+        return gpsOnMillis;
+    }
+
+    public static void main(String... args)
+    {
+        double days = 7;
+        long seed = 1;
+        double dragHours = Double.NaN;
+        double minAccuracy = 10;
+        for (int ii=0;ii<args.length;ii++)
+        {
+            switch (args[ii])
+            {
+                case "-d":
+                    days = Double.parseDouble(args[++ii]);
+                    break;
+                case "-s":
+                    seed = Long.parseLong(args[++ii]);
+                    break;
+                case "-g":
+                    dragHours = Double.parseDouble(args[++ii]);
+                    break;
+                case "-a":
+                    minAccuracy = Double.parseDouble(args[++ii]);
+                    break;
+                default:
+                    System.err.println("usage: SimulatedAnchorage [-d days] [-s seed] [-g dragHours] [-a minAccuracy]");
+                    System.exit(1);
+            }
+        }
+        long start = 0;
+        SimulatedAnchorage sa = new SimulatedAnchorage(start, seed);
+        sa.getEngine().setMinAccuracy(minAccuracy);
+        sa.getSimulator().setOutage(6*3600000L, 600000L, 50);
+        if (!Double.isNaN(dragHours))
+        {
+            sa.getSimulator().setDrag(start+(long)(dragHours*3600000), 0.5);
+        }
+        long t0 = System.nanoTime();
+        sa.run((long)(days*24*3600000));
+        long elapsed = (System.nanoTime() - t0)/1000000;
+        AnchorWatchEngine engine = sa.getEngine();
+        System.out.println("simulated "+days+" days in "+elapsed+" ms");
+        System.out.println("fixes="+sa.getSimulator().getSteps()+" accepted="+engine.getAccepted()+" rejected="+engine.getRejected()+" filtered="+engine.getFiltered());
+        System.out.println("anchorAlarms="+sa.getAnchorAlarms()+" accuracyAlarms="+sa.getAccuracyAlarms()+" resumes="+sa.getResumes());
+        if (sa.getFirstAlarm() != Long.MAX_VALUE)
+        {
+            System.out.println("first alarm at "+(sa.getFirstAlarm()-start)/60000+" min");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import org.vesalainen.navi.AnchorWatch;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class SleepPolicyTest
+{
+    private static final double Radius = 100/AnchorWatch.toMeters(1);
+    private static final double InnerRadius = 10/AnchorWatch.toMeters(1);
+    private static final double Epsilon = 1e-6;
+    private final SleepPolicy policy = new SleepPolicy();
+    private long time;
+
+    @Before
+    public void before()
+    {
+        policy.setMaxSleepMillis(3600000);
+    }
+    /**
+     * Points outside circle have no margin.
+     */
+    @Test
+    public void testCircle()
+    {
+        sector(true, 0, 0);
+        assertEquals(50, breach(0, 50), Epsilon);
+        assertEquals(0, breach(0, 150), Epsilon);
+        assertEquals(0, breach(-150, 0), Epsilon);
+    }
+    /**
+     * Wedge from north clockwise to west. North-west quadrant is outside
+     * wedge and covered only by inner circle.
+     */
+    @Test
+    public void testWedge()
+    {
+        sector(false, Math.PI/2, Math.PI);
+        assertEquals(100 - Math.hypot(50, 50), breach(50, 50), Epsilon);
+        assertEquals(20, breach(20, -70), Epsilon);
+        assertEquals(30, breach(-30, -30), Epsilon);
+        assertEquals(0, breach(-50, 50), Epsilon);
+        assertEquals(0, breach(-90, 5), Epsilon);
+        assertEquals(0, breach(-5, 90), Epsilon);
+        assertEquals(10 - Math.hypot(3, 3), breach(-3, 3), Epsilon);
+        assertEquals(0, breach(150, 0), Epsilon);
+    }
+    /**
+     * Wedge that wraps over east.
+     */
+    @Test
+    public void testWrappedWedge()
+    {
+        sector(false, Math.PI/4, -Math.PI/4);
+        assertEquals(Math.sqrt(2)*25, breach(50, 0), Epsilon);
+        assertEquals(0, breach(-50, 0), Epsilon);
+        assertEquals(0, breach(0, 50), Epsilon);
+        assertEquals(0, breach(0, -50), Epsilon);
+    }
+    /**
+     * Returns time to breach at drag speed 1 m/s for boat at x,y meters
+     * from sector center.
+     */
+    private double breach(double x, double y)
+    {
+        time += 1000;
+        policy.location(x/AnchorWatch.toMeters(1), y/AnchorWatch.toMeters(1), time, 0);
+        return policy.timeToBreach();
+    }
+
+    private void sector(boolean circle, double left, double right)
+    {
+        policy.safeSector(circle, 0, 0, Radius, left, right, 0, 0, InnerRadius);
+    }
+}
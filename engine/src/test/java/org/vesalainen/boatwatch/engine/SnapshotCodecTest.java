@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class SnapshotCodecTest
+{
+    private static final int Capacity = 1024;
+    private static final int Fixes = 500;
+    private static final int Marked = 123;
+    private final SnapshotCodec codec = new SnapshotCodec();
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        Snapshot snapshot = create();
+        byte[] data = encode(snapshot);
+        assertEquals(SnapshotCodec.size(snapshot), data.length);
+        Snapshot decoded = new Snapshot(Capacity);
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        codec.decode(bb, decoded);
+        assertEquals(data.length, bb.position());
+        TrackStore exp = snapshot.getTrack();
+        TrackStore got = decoded.getTrack();
+        assertEquals(exp.size(), got.size());
+        assertEquals(Marked, got.getLastMarked());
+        for (int ii=0;ii<exp.size();ii++)
+        {
+            assertEquals(exp.getTimeView()[ii], got.getTimeView()[ii]);
+            assertEquals(exp.getXView()[ii], got.getXView()[ii], 0);
+            assertEquals(exp.getYView()[ii], got.getYView()[ii], 0);
+            assertEquals(exp.getAccuracyView()[ii], got.getAccuracyView()[ii], 0);
+            assertEquals(exp.getSpeedView()[ii], got.getSpeedView()[ii], 0);
+            assertEquals(exp.getFlagsView()[ii], got.getFlagsView()[ii]);
+        }
+        assertArrayEquals(data, encode(decoded));
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        byte[] data = encode(new Snapshot(Capacity));
+        Snapshot decoded = create();
+        codec.decode(ByteBuffer.wrap(data), decoded);
+        assertEquals(0, decoded.getTrackCount());
+    }
+
+    @Test
+    public void testVersion1SectionsSkipped() throws IOException
+    {
+        Snapshot snapshot = create();
+        byte[] data = encode(snapshot);
+        int anchorEnd = 4+2+4+1+4+4;
+        byte[] area = new byte[] {2, 0, 0, 0, 4, 0, 0, 0, 0};
+        ByteBuffer bb = ByteBuffer.allocate(data.length+area.length);
+        bb.put(data, 0, anchorEnd);
+        bb.put(area);
+        bb.put(data, anchorEnd, data.length-anchorEnd-4);
+        bb.putShort(4, (short)1);
+        bb.putInt(6, bb.capacity());
+        CRC32 crc = new CRC32();
+        crc.update(bb.array(), 0, bb.position());
+        bb.putInt((int) crc.getValue());
+        bb.flip();
+        Snapshot decoded = new Snapshot(Capacity);
+        codec.decode(bb, decoded);
+        assertEquals(snapshot.getTrackCount(), decoded.getTrackCount());
+        assertEquals(Marked, decoded.getTrack().getLastMarked());
+    }
+
+    @Test
+    public void testTruncated()
+    {
+        byte[] data = encode(create());
+        for (int len=0;len<data.length;len++)
+        {
+            assertCorrupted(Arrays.copyOf(data, len));
+        }
+    }
+
+    @Test
+    public void testBitFlip()
+    {
+        byte[] data = encode(create());
+        for (int bit=0;bit<8*data.length;bit++)
+        {
+            byte[] copy = data.clone();
+            copy[bit/8] ^= 1<<(bit%8);
+            assertCorrupted(copy);
+        }
+    }
+
+    @Test
+    public void testRandom()
+    {
+        Random random = new Random(1);
+        byte[] data = encode(create());
+        for (int ii=0;ii<10000;ii++)
+        {
+            byte[] copy = data.clone();
+            int count = 1+random.nextInt(16);
+            for (int jj=0;jj<count;jj++)
+            {
+                copy[random.nextInt(copy.length)] = (byte) random.nextInt();
+            }
+            if (!Arrays.equals(data, copy))
+            {
+                assertCorrupted(copy);
+            }
+        }
+    }
+
+    private void assertCorrupted(byte[] data)
+    {
+        try
+        {
+            codec.decode(ByteBuffer.wrap(data), new Snapshot(Capacity));
+            fail("decoded corrupted snapshot of "+data.length+" bytes");
+        }
+        catch (IOException ex)
+        {
+        }
+    }
+
+    private Snapshot create()
+    {
+        Snapshot snapshot = new Snapshot(Capacity);
+        Random random = new Random(1);
+        for (int ii=0;ii<Fixes;ii++)
+        {
+            snapshot.fix(1000L*ii, 25+random.nextDouble()/1000, 60+random.nextDouble()/1000, 3+random.nextInt(10), random.nextFloat());
+            if (ii == Marked)
+            {
+                snapshot.anchorSet();
+            }
+        }
+        return snapshot;
+    }
+
+    private byte[] encode(Snapshot snapshot)
+    {
+        ByteBuffer bb = ByteBuffer.allocate(SnapshotCodec.size(snapshot));
+        codec.encode(snapshot, bb);
+        assertEquals(0, bb.remaining());
+        return bb.array();
+    }
+}
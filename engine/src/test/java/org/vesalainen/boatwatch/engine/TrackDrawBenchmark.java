@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.util.Arrays;
+
+/**
+ * Measures track frame time with LineSimplifier on a simulated track.
+ * Frame is projection of every point to screen and simplification. Canvas
+ * drawing is not included, but its cost is proportional to the reported
+ * number of lines.
+ *
+ * <p>Usage: TrackDrawBenchmark [-n points] [-w width] [-h height] [-t tolerance]
+ *
+ * @author Timo Vesalainen
+ */
+public class TrackDrawBenchmark implements FixSink
+{
+    private static final double DegreeMeters = 60*1852;
+    private static final int Frames = 10;
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private int count;
+    private double lon0 = Double.NaN;
+    private double lat0;
+    private double lonScale;
+
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        if (Double.isNaN(lon0))
+        {
+            lon0 = longitude;
+            lat0 = latitude;
+            lonScale = DegreeMeters*Math.cos(Math.toRadians(latitude));
+        }
+        if (count == xs.length)
+        {
+            xs = Arrays.copyOf(xs, 2*count);
+            ys = Arrays.copyOf(ys, 2*count);
+        }
+        xs[count] = (longitude - lon0)*lonScale;
+        ys[count] = (latitude - lat0)*DegreeMeters;
+        count++;
+    }
+
+    private void run(int width, int height, float tolerance, double zoom)
+    {
+        double minX = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int ii=0;ii<count;ii++)
+        {
+            minX = Math.min(minX, xs[ii]);
+            maxX = Math.max(maxX, xs[ii]);
+            minY = Math.min(minY, ys[ii]);
+            maxY = Math.max(maxY, ys[ii]);
+        }
+        double scale = zoom*Math.min(width/(maxX - minX), height/(maxY - minY));
+        double cx = (minX + maxX)/2;
+        double cy = (minY + maxY)/2;
+        float[] lines = new float[4*count];
+        LineSimplifier simplifier = new LineSimplifier();
+        int len = 0;
+        long best = Long.MAX_VALUE;
+        for (int frame=0;frame<Frames+3;frame++)
+        {
+            simplifier = new LineSimplifier();
+            long t0 = System.nanoTime();
+            simplifier.reset(0, 0, width, height, tolerance);
+            len = 0;
+            for (int ii=0;ii<count;ii++)
+            {
+                float sx = (float) ((xs[ii] - cx)*scale + width/2);
+                float sy = (float) (height/2 - (ys[ii] - cy)*scale);
+                len = simplifier.add(sx, sy, lines, len);
+            }
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        System.out.printf("zoom=%.0f: points=%d lines=%d (%.3f%%) culled=%d covered=%d frame=%.1f ms (%.1f ns/point)%n",
+                zoom,
+                count,
+                len/4,
+                100.0*len/4/Math.max(1, count-1),
+                simplifier.getCulled(),
+                simplifier.getCovered(),
+                best/1e6,
+                (double)best/Math.max(1, count)
+                );
+    }
+
+    public static void main(String... args)
+    {
+        int points = 1000000;
+        int width = 1080;
+        int height = 1920;
+        float tolerance = 2;
+        for (int ii=0;ii+1<args.length;ii+=2)
+        {
+            switch (args[ii])
+            {
+                case "-n":
+                    points = Integer.parseInt(args[ii+1]);
+                    break;
+                case "-w":
+                    width = Integer.parseInt(args[ii+1]);
+                    break;
+                case "-h":
+                    height = Integer.parseInt(args[ii+1]);
+                    break;
+                case "-t":
+                    tolerance = Float.parseFloat(args[ii+1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException(args[ii]);
+            }
+        }
+        VirtualClock clock = new VirtualClock(0);
+        TrackDrawBenchmark bm = new TrackDrawBenchmark();
+        SwingSimulator sim = new SwingSimulator(clock, bm, 1);
+        for (int ii=0;ii<points;ii++)
+        {
+            clock.advance(1000);
+            sim.step();
+        }
+        System.out.printf("screen=%dx%d tolerance=%.1f px%n", width, height, tolerance);
+        for (double zoom : new double[] {1, 4, 16})
+        {
+            bm.run(width, height, tolerance, zoom);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class TrackJournalTest
+{
+    private static final int Capacity = 100;
+    private File file;
+    private File crashed;
+
+    @Before
+    public void before() throws IOException
+    {
+        file = File.createTempFile("journal", ".dat");
+        crashed = File.createTempFile("crashed", ".dat");
+        file.delete();
+    }
+
+    @After
+    public void after()
+    {
+        file.delete();
+        crashed.delete();
+    }
+
+    @Test
+    public void testCompact() throws IOException
+    {
+        try (TrackJournal journal = open(file))
+        {
+            append(journal, 1, 150);
+            assertTimes(journal, 51, 150);
+        }
+        try (TrackJournal journal = open(file))
+        {
+            assertTimes(journal, 51, 150);
+        }
+    }
+
+    @Test
+    public void testReset() throws IOException
+    {
+        try (TrackJournal journal = open(file))
+        {
+            append(journal, 1, 60);
+            journal.reset(61);
+            append(journal, 62, 110);
+            assertTrue(journal.hasReset());
+            assertTimes(journal, 62, 110);
+        }
+        try (TrackJournal journal = open(file))
+        {
+            assertTrue(journal.hasReset());
+            assertTimes(journal, 62, 110);
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException
+    {
+        try (TrackJournal journal = open(file))
+        {
+            append(journal, 1, 50);
+            journal.clear();
+        }
+        try (TrackJournal journal = open(file))
+        {
+            assertEquals(0, journal.size());
+        }
+    }
+    /**
+     * Journal file is copied in the middle of compaction, as if process
+     * died. Journal opened from the copy must have moved records only, in
+     * order and without old records after them.
+     */
+    @Test
+    public void testCrashDuringCompaction() throws IOException
+    {
+        int[] limits = new int[] {0, 1, 25, 49, 50};
+        for (int limit : limits)
+        {
+            file.delete();
+            try (TrackJournal journal = open(file))
+            {
+                append(journal, 1, Capacity);
+                journal.compact(limit);
+                Files.copy(file.toPath(), crashed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (TrackJournal journal = open(crashed))
+            {
+                assertTimes(journal, 51, 50+limit);
+                append(journal, 51+limit, 60+limit);
+                assertTimes(journal, 51, 60+limit);
+            }
+        }
+    }
+
+    private TrackJournal open(File f) throws IOException
+    {
+        return new TrackJournal(f, Capacity, 1000, 1000000);
+    }
+
+    private void append(TrackJournal journal, long from, long to)
+    {
+        for (long time=from;time<=to;time++)
+        {
+            journal.fix(time, time, -time, 5, 0);
+        }
+    }
+
+    private void assertTimes(TrackJournal journal, long from, long to)
+    {
+        final List<Long> times = new ArrayList<>();
+        journal.replay(new TrackJournal.Replayer() 
+        {
+            @Override
+            public void anchorSet(long time)
+            {
+            }
+
+            @Override
+            public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+            {
+                assertEquals(time, longitude, 0);
+                assertEquals(-time, latitude, 0);
+                times.add(time);
+            }
+        });
+        assertEquals(to-from+1, times.size());
+        for (int ii=0;ii<times.size();ii++)
+        {
+            assertEquals(from+ii, (long)times.get(ii));
+        }
+        assertEquals(times.size(), journal.size());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.ejml.data.DenseMatrix64F;
+import org.vesalainen.math.Circle;
+import org.vesalainen.math.ConvexPolygon;
+import org.vesalainen.navi.AnchorWatch;
+import org.vesalainen.navi.AnchorWatch.Watcher;
+import org.vesalainen.navi.SafeSector;
+
+/**
+ * Replays recorded track files through FixIngest as fast as possible. Fix
+ * times drive VirtualClock, so accuracy watchdog and alarm mute deadlines
+ * fire as they would in AnchorWatchService, also when GPS goes silent.
+ * Alarms are muted as soon as they start.
+ *
+ * <p>Usage: TrackReplay [-a minAccuracy] [-t accuracyAlarmMinutes] file...
+ *
+ * @author Timo Vesalainen
+ */
+public class TrackReplay implements FixSink, Watcher, FixIngest.Listener
+{
+    private final VirtualClock clock;
+    private final AnchorWatchEngine engine;
+    private final FixIngest ingest;
+    private final List<Long> anchorAlarmTimes = new ArrayList<>();
+    private final List<Long> accuracyAlarmTimes = new ArrayList<>();
+
+    public TrackReplay(double minAccuracy, long accuracyAlarmMillis)
+    {
+        clock = new VirtualClock(0);
+        DeadlineScheduler scheduler = new DeadlineScheduler(clock, "TrackReplay");
+        clock.register(scheduler);
+        AnchorWatch watch = new AnchorWatch();
+        engine = new AnchorWatchEngine(watch);
+        engine.setMinAccuracy(minAccuracy);
+        ingest = new FixIngest(engine, scheduler, new Executor() 
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        }, this);
+        ingest.setAccuracyAlarmMillis(accuracyAlarmMillis);
+        watch.addWatcher(this);
+    }
+    /**
+     * Advances clock to fix time, running deadlines due before it, and
+     * ingests fix.
+     */
+    @Override
+    public void fix(long time, double longitude, double latitude, double accuracy, double speed)
+    {
+        clock.advanceTo(time);
+        ingest.fix(time, longitude, latitude, accuracy, speed);
+    }
+    /**
+     * Advances clock after last fix. Use to see alarms for GPS that went
+     * silent at the end of track.
+     * @param millis 
+     */
+    public void advance(long millis)
+    {
+        clock.advance(millis);
+    }
+
+    public AnchorWatchEngine getEngine()
+    {
+        return engine;
+    }
+
+    public long getAnchorAlarms()
+    {
+        return ingest.getAnchorAlarms();
+    }
+
+    public long getAccuracyAlarms()
+    {
+        return ingest.getAccuracyAlarms();
+    }
+    /**
+     * Returns times of raised anchor alarms.
+     * @return 
+     */
+    public List<Long> getAnchorAlarmTimes()
+    {
+        return anchorAlarmTimes;
+    }
+    /**
+     * Returns times of raised accuracy alarms.
+     * @return 
+     */
+    public List<Long> getAccuracyAlarmTimes()
+    {
+        return accuracyAlarmTimes;
+    }
+
+    @Override
+    public void alarm(double distance)
+    {
+        ingest.alarm(distance);
+    }
+
+    @Override
+    public void anchorAlarm(double distance)
+    {
+        anchorAlarmTimes.add(clock.millis());
+        ingest.muteAnchorAlarm();
+    }
+
+    @Override
+    public void accuracyAlarm()
+    {
+        accuracyAlarmTimes.add(clock.millis());
+        ingest.muteAccuracyAlarm();
+    }
+
+    @Override
+    public void location(double x, double y, long time, double accuracy, double speed)
+    {
+    }
+
+    @Override
+    public void area(ConvexPolygon area)
+    {
+    }
+
+    @Override
+    public void outer(DenseMatrix64F path)
+    {
+    }
+
+    @Override
+    public void estimated(Circle estimated)
+    {
+    }
+
+    @Override
+    public void safeSector(SafeSector safe)
+    {
+    }
+
+    @Override
+    public void suggestNextUpdateIn(double seconds, double meters)
+    {
+    }
+
+    public static void main(String... args) throws IOException
+    {
+        double minAccuracy = 10;
+        long accuracyAlarmMillis = 5*60000;
+        int ii = 0;
+        while (ii < args.length && args[ii].startsWith("-"))
+        {
+            if (ii+1 == args.length)
+            {
+                usage();
+                return;
+            }
+            switch (args[ii])
+            {
+                case "-a":
+                    minAccuracy = Double.parseDouble(args[ii+1]);
+                    break;
+                case "-t":
+                    accuracyAlarmMillis = Long.parseLong(args[ii+1])*60000;
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+            ii += 2;
+        }
+        if (ii == args.length)
+        {
+            usage();
+            return;
+        }
+        for (;ii<args.length;ii++)
+        {
+            File file = new File(args[ii]);
+            TrackReplay replay = new TrackReplay(minAccuracy, accuracyAlarmMillis);
+            long start = System.nanoTime();
+            long count;
+            try (TrackReader reader = new TrackReader(file))
+            {
+                count = reader.readAll(replay);
+            }
+            long nanos = System.nanoTime() - start;
+            AnchorWatchEngine engine = replay.getEngine();
+            System.out.printf("%s: fixes=%d accepted=%d rejected=%d filtered=%d anchorAlarms=%d accuracyAlarms=%d time=%dms rate=%.0f fixes/s%n",
+                    file,
+                    count,
+                    engine.getAccepted(),
+                    engine.getRejected(),
+                    engine.getFiltered(),
+                    replay.getAnchorAlarms(),
+                    replay.getAccuracyAlarms(),
+                    nanos/1000000,
+                    count*1e9/Math.max(nanos, 1)
+            );
+        }
+    }
+
+    private static void usage()
+    {
+        System.err.println("usage: TrackReplay [-a minAccuracy] [-t accuracyAlarmMinutes] file...");
+    }
+}
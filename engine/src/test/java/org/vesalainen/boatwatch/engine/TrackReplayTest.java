@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 Timo Vesalainen
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.vesalainen.boatwatch.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author Timo Vesalainen
+ */
+public class TrackReplayTest
+{
+    private static final long Start = 1445000000000L;
+    private static final long Minute = 60000;
+    /**
+     * silent-gps.trk has a fix every 10 seconds for two hours at 5 m
+     * accuracy except that GPS is silent from 30 to 50 minutes and has 30 m
+     * accuracy from 70 to 82 minutes.
+     */
+    @Test
+    public void testSilentGps() throws IOException, URISyntaxException
+    {
+        File file = new File(TrackReplayTest.class.getResource("silent-gps.trk").toURI());
+        TrackReplay replay = new TrackReplay(10, 5*Minute);
+        try (TrackReader reader = new TrackReader(file))
+        {
+            assertEquals(600, reader.readAll(replay));
+        }
+        assertEquals(528, replay.getEngine().getAccepted());
+        assertEquals(72, replay.getEngine().getRejected());
+        assertEquals(Arrays.asList(
+                Start+29*Minute+50000+5*Minute, // silent
+                Start+69*Minute+50000+5*Minute, // inaccurate
+                Start+74*Minute+50000+5*Minute  // still inaccurate after mute
+                ), 
+                replay.getAccuracyAlarmTimes());
+        replay.advance(10*Minute);
+        assertEquals(4, replay.getAccuracyAlarms());
+        assertEquals(Start+119*Minute+50000+5*Minute, (long)replay.getAccuracyAlarmTimes().get(3));
+    }
+    
+}